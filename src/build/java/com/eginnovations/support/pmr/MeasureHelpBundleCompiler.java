@@ -0,0 +1,197 @@
+package com.eginnovations.support.pmr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.eginnovations.support.pmr.model.MeasureHelp;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Build step (run by the exec plugin in the process-classes phase) that validates the
+ * {@code eghelp/<test>.json} files and writes them, keys normalized, as the single
+ * {@link MeasureHelpIndex#BUNDLE} resource that {@link MeasureHelpIndex} loads.
+ * <p>
+ * Fields are normalized (structured interpretations flattened to text, a "none" troubleshooting step
+ * dropped). Fails on anything that loading used to skip or guess at: unparsable or trailing JSON, entries
+ * that are not objects, without a measurement or with a field of an unexpected type, and measures or tests
+ * that normalize to the same key.
+ * <p>
+ * Lives in {@code src/build/java}, which is compiled to {@code target/build-classes} for the exec plugin
+ * only (and with the tests), so it is not part of the application.
+ * <p>
+ * Usage: {@code MeasureHelpBundleCompiler <eghelp directory> <bundle file>}
+ */
+public class MeasureHelpBundleCompiler {
+
+    private final ObjectMapper reader = new ObjectMapper()
+            .enable(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
+    private final ObjectMapper writer = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    private final List<String> problems = new ArrayList<>();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: MeasureHelpBundleCompiler <eghelp directory> <bundle file>");
+        }
+        new MeasureHelpBundleCompiler().compile(Paths.get(args[0]), Paths.get(args[1]));
+    }
+
+    void compile(Path helpDir, Path bundleFile) throws IOException {
+        Map<String, Map<String, MeasureHelp>> tests = new TreeMap<>();
+        int measureCount = 0;
+        List<Path> helpFiles;
+        try (Stream<Path> files = Files.list(helpDir)) {
+            helpFiles = files.filter(file -> file.getFileName().toString().endsWith(".json")).sorted().toList();
+        }
+        for (Path helpFile : helpFiles) {
+            String fileName = helpFile.getFileName().toString();
+            String testKey = MeasureHelpIndex.testKey(fileName.substring(0, fileName.length() - ".json".length()));
+            Map<String, MeasureHelp> measures = readHelpFile(helpFile);
+            if (tests.put(testKey, measures) != null) {
+                problems.add(fileName + ": another help file has the same test name");
+            }
+            measureCount += measures.size();
+        }
+        if (!problems.isEmpty()) {
+            throw new IllegalStateException(problems.size() + " problem(s) in " + helpDir + ":\n  "
+                    + String.join("\n  ", problems));
+        }
+        Files.createDirectories(bundleFile.toAbsolutePath().getParent());
+        writer.writeValue(bundleFile.toFile(), tests);
+        System.out.println("Compiled help for " + measureCount + " measure(s) of " + tests.size() + " test(s) into "
+                + bundleFile + " (" + Files.size(bundleFile) + " bytes)");
+    }
+
+    private Map<String, MeasureHelp> readHelpFile(Path helpFile) throws IOException {
+        String fileName = helpFile.getFileName().toString();
+        Map<String, MeasureHelp> measures = new TreeMap<>();
+        JsonNode entries;
+        try (InputStream in = Files.newInputStream(helpFile)) {
+            entries = reader.readTree(in);
+        } catch (IOException e) {
+            problems.add(fileName + ": " + e.getMessage().lines().findFirst().orElse(""));
+            return measures;
+        }
+        if (entries == null || !entries.isArray()) {
+            problems.add(fileName + ": not a JSON array");
+            return measures;
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            JsonNode entry = entries.get(i);
+            String where = fileName + " entry " + i;
+            if (!entry.isObject()) {
+                problems.add(where + ": not a JSON object");
+                continue;
+            }
+            entry.fields().forEachRemaining(field -> {
+                JsonNode value = field.getValue();
+                boolean steps = "troubleshootingsteps".equals(normalizeKey(field.getKey()));
+                boolean valid = value.isNull() || value.isTextual() || (steps ? isTextArray(value) : value.isObject());
+                if (!valid) {
+                    problems.add(where + ": '" + field.getKey() + "' is not " + (steps ? "a list of text" : "text"));
+                }
+            });
+            MeasureHelp help = toMeasureHelp(reader.convertValue(entry, new TypeReference<Map<String, Object>>() {}));
+            if (help.getMeasurement() == null || help.getMeasurement().isBlank()) {
+                problems.add(where + ": no measurement");
+                continue;
+            }
+            if (measures.put(MeasureHelpIndex.measureKey(help.getMeasurement()), help) != null) {
+                problems.add(where + ": measurement '" + help.getMeasurement() + "' is described more than once");
+            }
+        }
+        return measures;
+    }
+
+    private static boolean isTextArray(JsonNode node) {
+        if (!node.isArray()) {
+            return false;
+        }
+        for (JsonNode item : node) {
+            if (!item.isTextual()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A help entry as {@link MeasureHelp}. The keys of the help files do not agree on casing
+     * ({@code Measurement}/{@code measurement}, {@code MeasurementUnit}/{@code unit}) and are matched
+     * lowercased and without spaces, underscores and dashes.
+     */
+    private static MeasureHelp toMeasureHelp(Map<String, Object> entry) {
+        Map<String, Object> fields = new HashMap<>();
+        entry.forEach((key, value) -> fields.putIfAbsent(normalizeKey(key), value));
+        MeasureHelp help = new MeasureHelp();
+        help.setMeasurement(asString(fields.get("measurement")));
+        help.setDescription(asString(fields.get("description")));
+        help.setMeasurementUnit(asString(fields.containsKey("measurementunit") ? fields.get("measurementunit") : fields.get("unit")));
+        help.setInterpretation(asString(fields.get("interpretation")));
+        Object steps = fields.get("troubleshootingsteps");
+        if (steps instanceof List<?> stepList) {
+            List<String> troubleshootingSteps = new ArrayList<>();
+            stepList.forEach(step -> troubleshootingSteps.add(String.valueOf(step)));
+            help.setTroubleshootingSteps(troubleshootingSteps);
+        } else if (steps instanceof String step && !step.isBlank() && !"none".equalsIgnoreCase(step.trim())) {
+            help.setTroubleshootingSteps(List.of(step));
+        }
+        return help;
+    }
+
+    /**
+     * Text of a help field. Some interpretations are objects such as
+     * {@code {"Text": ..., "Mappings": [{"MeasureValue": "Yes", "NumericValue": 1}, ...], "Note": ...}};
+     * their parts are joined in order, with the mappings as "Measure values: Yes = 1, ...".
+     */
+    private static String asString(Object value) {
+        if (value instanceof Map<?, ?> parts) {
+            List<String> text = new ArrayList<>();
+            parts.values().forEach(part -> {
+                if (part instanceof List<?> mappings) {
+                    text.add("Measure values: " + mappings.stream().map(MeasureHelpBundleCompiler::mappingText)
+                            .collect(Collectors.joining(", ")) + ".");
+                } else if (part != null) {
+                    text.add(asString(part));
+                }
+            });
+            return String.join(" ", text);
+        }
+        return value == null ? null : String.valueOf(value);
+    }
+
+    private static String mappingText(Object mapping) {
+        if (mapping instanceof Map<?, ?> values) {
+            return values.values().stream().map(String::valueOf).collect(Collectors.joining(" = "));
+        }
+        return String.valueOf(mapping);
+    }
+
+    /**
+     * Lowercase, without spaces, underscores and dashes
+     */
+    private static String normalizeKey(String key) {
+        StringBuilder normalized = new StringBuilder();
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c != ' ' && c != '_' && c != '-') {
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+}
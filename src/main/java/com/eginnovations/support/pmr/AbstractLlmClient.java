@@ -0,0 +1,133 @@
+package com.eginnovations.support.pmr;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.eginnovations.support.pmr.model.KPIVerdict;
+import com.eginnovations.support.pmr.model.LlmRequest;
+import com.eginnovations.support.pmr.model.LlmResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Parts of an {@link LlmClient} that do not depend on the backend's API: schema-constrained JSON and
+ * verdicts on top of {@link #generate(LlmRequest)}, and the HTML messages of error responses
+ */
+public abstract class AbstractLlmClient implements LlmClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(AbstractLlmClient.class);
+
+    protected final ObjectMapper objectMapper = new ObjectMapper();
+    private volatile JsonNode verdictSchema;
+
+    @Override
+    public String generateJson(LlmRequest request, JsonNode schema) {
+        request.setFormat(schema);
+        request.setStopCondition(AbstractLlmClient::isJsonComplete);
+        LlmResponse response = generate(request);
+        return response.isError() ? null : response.getText();
+    }
+
+    @Override
+    public KPIVerdict generateVerdict(LlmRequest request) {
+        String json = generateJson(request, getVerdictSchema());
+        if (json == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, KPIVerdict.class);
+        } catch (IOException e) {
+            logger.warn("Could not parse structured verdict from {}: {}", getClass().getSimpleName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * True once the text holds a complete top-level JSON object or array (string contents are ignored)
+     */
+    static boolean isJsonComplete(CharSequence text) {
+        int depth = 0;
+        boolean started = false;
+        boolean inString = false;
+        boolean escaped = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                depth++;
+                started = true;
+            } else if (c == '}' || c == ']') {
+                depth--;
+                if (started && depth == 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * JSON schema of {@link KPIVerdict}, passed as the backend's JSON format constraint
+     */
+    private JsonNode getVerdictSchema() {
+        if (verdictSchema == null) {
+            ObjectNode schema = objectMapper.createObjectNode();
+            schema.put("type", "object");
+            ObjectNode properties = schema.putObject("properties");
+            ObjectNode status = properties.putObject("status");
+            status.put("type", "string");
+            status.putArray("enum").add("COMPLIANT").add("NON-COMPLIANT").add("NEEDS REVIEW");
+            ObjectNode confidence = properties.putObject("confidence");
+            confidence.put("type", "number");
+            confidence.put("minimum", 0);
+            confidence.put("maximum", 1);
+            properties.putObject("reasons").put("type", "array").putObject("items").put("type", "string");
+            properties.putObject("keyDataPoints").put("type", "array").putObject("items").put("type", "string");
+            properties.putObject("explanation").put("type", "string");
+            schema.putArray("required").add("status").add("confidence").add("reasons").add("keyDataPoints").add("explanation");
+            verdictSchema = schema;
+        }
+        return verdictSchema;
+    }
+
+    protected LlmResponse errorResponse(String html) {
+        LlmResponse response = new LlmResponse();
+        response.setText(html);
+        response.setError(true);
+        return response;
+    }
+
+    /**
+     * Returns a fallback response when Ollama is unavailable
+     */
+    protected String getFallbackResponse() {
+        return "<div class='alert alert-info'>" +
+               "<strong>AI Analysis Unavailable</strong><br>" +
+               "The AI analysis service is currently unavailable. " +
+               "Please review the alarm details and interpretation guide above for manual analysis." +
+               "</div>";
+    }
+
+    /**
+     * Returns an error response
+     */
+    protected String getErrorResponse(String error) {
+        return "<div class='alert alert-warning'>" +
+               "<strong>AI Analysis Error</strong><br>" +
+               error + "<br>" +
+               "Please review the alarm details and interpretation guide above for manual analysis." +
+               "</div>";
+    }
+}
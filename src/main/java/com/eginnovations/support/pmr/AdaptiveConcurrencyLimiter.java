@@ -0,0 +1,225 @@
+package com.eginnovations.support.pmr;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * AIMD limiter for the number of LLM requests in flight.
+ * <p>
+ * Every completed request is a sample of generation speed (milliseconds per response character, so long
+ * and short answers are comparable). While samples stay within {@code ollama.concurrency.latency.tolerance}
+ * times the best speed seen, and the limit was actually in use, the limit grows by one per round of requests.
+ * Slower samples or failures cut it multiplicatively. The limit always stays within
+ * {@code ollama.concurrency.min} and {@code ollama.concurrency.max}.
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    private static final double BACKOFF_RATIO = 0.7;
+    private static final double BASELINE_DRIFT = 0.01;
+    // How often a waiting acquire looks at its cancel condition when no permit is released
+    private static final long CANCEL_CHECK_MILLIS = 50;
+
+    @Autowired
+    private Environment env;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitAvailable = lock.newCondition();
+
+    private volatile Boolean enabled;
+    private int minLimit;
+    private int maxLimit;
+    private double tolerance;
+    private double limit;
+    private int inFlight;
+    private double baseline = Double.NaN;
+    private long samplesSinceDecrease;
+
+    // Statistics for the end-of-run summary
+    private long startedAt;
+    private long lastChangeAt;
+    private double limitMillis;
+    private int lowestLimit;
+    private int highestLimit;
+    private long completed;
+    private long failed;
+
+    /**
+     * Whether adaptive concurrency is switched on with {@code ollama.concurrency.adaptive}
+     */
+    public boolean isEnabled() {
+        if (enabled == null) {
+            init();
+        }
+        return enabled;
+    }
+
+    /**
+     * Upper bound of the limit; callers size their worker pools to it
+     */
+    public int getMaxLimit() {
+        isEnabled();
+        return maxLimit;
+    }
+
+    /**
+     * Blocks until the number of requests in flight is below the current limit
+     */
+    public void acquire() throws InterruptedException {
+        acquire(() -> false);
+    }
+
+    /**
+     * Like {@link #acquire()}, but gives up without a permit once {@code cancelled} holds
+     *
+     * @return false if cancelled; no permit is held then
+     */
+    public boolean acquire(BooleanSupplier cancelled) throws InterruptedException {
+        if (!isEnabled()) {
+            return !cancelled.getAsBoolean();
+        }
+        lock.lock();
+        try {
+            while (!cancelled.getAsBoolean() && inFlight >= (int) limit) {
+                permitAvailable.await(CANCEL_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            if (cancelled.getAsBoolean()) {
+                return false;
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a permit obtained from {@link #acquire()} and feeds the request outcome into the limit
+     */
+    public void release(boolean success, long latencyMillis, long responseChars) {
+        if (!isEnabled()) {
+            return;
+        }
+        lock.lock();
+        try {
+            boolean saturated = inFlight >= (int) limit;
+            inFlight--;
+            samplesSinceDecrease++;
+            int before = (int) limit;
+
+            if (!success) {
+                failed++;
+                decrease();
+            } else {
+                completed++;
+                double sample = (double) latencyMillis / Math.max(1, responseChars);
+                if (Double.isNaN(baseline) || sample < baseline) {
+                    baseline = sample;
+                } else {
+                    // Let the baseline follow slowly so one lucky sample does not pin it forever
+                    baseline += (sample - baseline) * BASELINE_DRIFT;
+                }
+                if (sample > baseline * tolerance) {
+                    decrease();
+                } else if (saturated) {
+                    limit = Math.min(maxLimit, limit + 1.0 / limit);
+                }
+            }
+
+            int after = (int) limit;
+            if (after != before) {
+                recordChange(before, after);
+                logger.info("Adaptive LLM concurrency limit {} -> {} (min {}, max {}, baseline {} ms/char, {} in flight)",
+                        before, after, minLimit, maxLimit, String.format("%.2f", baseline), inFlight);
+            }
+            permitAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a permit whose request was cancelled; the limit is left as it is
+     */
+    public void cancel() {
+        if (!isEnabled()) {
+            return;
+        }
+        lock.lock();
+        try {
+            inFlight--;
+            permitAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Logs the range and time-weighted average of the limit since startup
+     */
+    public void logStats() {
+        if (!isEnabled()) {
+            return;
+        }
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            double totalMillis = limitMillis + (now - lastChangeAt) * (int) limit;
+            double average = now == startedAt ? (int) limit : totalMillis / (now - startedAt);
+            String summary = String.format(
+                    "Adaptive LLM concurrency: bounds [%d, %d], limit ranged %d..%d, average %.1f, final %d (%d completed, %d failed)",
+                    minLimit, maxLimit, lowestLimit, highestLimit, average, (int) limit, completed, failed);
+            logger.info(summary);
+            System.out.println(summary);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void decrease() {
+        // Cut at most once per round of requests so a burst of slow answers does not collapse the limit
+        if (samplesSinceDecrease < (int) limit) {
+            return;
+        }
+        limit = Math.max(minLimit, Math.floor(limit * BACKOFF_RATIO));
+        samplesSinceDecrease = 0;
+    }
+
+    private void recordChange(int before, int after) {
+        long now = System.currentTimeMillis();
+        limitMillis += (double) (now - lastChangeAt) * before;
+        lastChangeAt = now;
+        lowestLimit = Math.min(lowestLimit, after);
+        highestLimit = Math.max(highestLimit, after);
+    }
+
+    private synchronized void init() {
+        if (enabled != null) {
+            return;
+        }
+        minLimit = Math.max(1, Integer.parseInt(env.getProperty("ollama.concurrency.min", "1")));
+        maxLimit = Math.max(minLimit, Integer.parseInt(env.getProperty("ollama.concurrency.max", "8")));
+        int initial = Integer.parseInt(env.getProperty("ollama.concurrency.initial", String.valueOf(minLimit)));
+        limit = Math.max(minLimit, Math.min(maxLimit, initial));
+        tolerance = Double.parseDouble(env.getProperty("ollama.concurrency.latency.tolerance", "2.0"));
+        startedAt = System.currentTimeMillis();
+        lastChangeAt = startedAt;
+        lowestLimit = (int) limit;
+        highestLimit = (int) limit;
+        enabled = Boolean.parseBoolean(env.getProperty("ollama.concurrency.adaptive", "false"));
+        if (enabled) {
+            logger.info("Adaptive LLM concurrency enabled: initial limit {}, bounds [{}, {}], latency tolerance {}x",
+                    (int) limit, minLimit, maxLimit, tolerance);
+        }
+    }
+}
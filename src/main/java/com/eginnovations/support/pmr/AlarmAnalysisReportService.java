@@ -8,16 +8,24 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -28,15 +36,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 
 import com.eginnovations.support.pmr.model.AlarmReportData;
+import com.eginnovations.support.pmr.model.LlmRequest;
+import com.eginnovations.support.pmr.model.LlmResponse;
+import com.eginnovations.support.pmr.model.MeasureHelp;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 @Service
 public class AlarmAnalysisReportService {
@@ -52,11 +62,72 @@ public class AlarmAnalysisReportService {
         PRIORITY_ORDER.put("warning", 4);
     }
     
+    // Order in which alarms are sent to the AI: priority, then most repeated, then zip order
+    private static final Comparator<PendingAlarm> ANALYSIS_ORDER = Comparator
+        .comparingInt((PendingAlarm p) -> PRIORITY_ORDER.getOrDefault(
+            p.report.getPriority() != null ? p.report.getPriority().toLowerCase() : "unknown", 999))
+        .thenComparing(p -> p.report.getRepeatCount(), Comparator.reverseOrder())
+        .thenComparingInt(p -> p.sequence);
+    
+    // Instructions shared by every alarm prompt; kept identical so the AI server can reuse its prompt cache
+    private static final String ALARM_SYSTEM_PROMPT = String.join("\n",
+        "You are an expert system performance analyst. Analyze the alarm data given by the user comprehensively.",
+        "You are a text-only assistant. Respond only in GitHub-flavored Markdown. Do not use any HTML tags like <p>, <strong>, <ul>, <li>, or <br>.",
+        "",
+        "=== REQUIRED ANALYSIS ===",
+        "Based on ALL the data provided (alarm details, interpretation guide, historical data, and diagnosis data), provide:",
+        "",
+        "1. **Alert Interpretation**: What does this alarm indicate? Consider the historical trends.",
+        "2. **Root Cause Analysis**: What are the likely root causes? Use the diagnosis data if available.",
+        "3. **Impact Assessment**: What is the potential impact on the system?",
+        "4. **Remediation Steps**: What specific steps should be taken to fix the problem?",
+        "",
+        "IMPORTANT: ",
+        "- Respond in GitHub-style Markdown, no HTML tags.",
+        "- Provide response in English language alone.",
+        "- Reference the historical data in your analysis if provided",
+        "- Reference the diagnosis data in your analysis if provided",
+        "- Keep your analysis concise but comprehensive",
+        "");
+    
+    // Instructions for a group of correlated alarms analyzed with one prompt, see AlarmCorrelator
+    private static final String CLUSTER_SYSTEM_PROMPT = String.join("\n",
+        "You are an expert system performance analyst. The user gives you a group of alarms raised on the same component and layer within overlapping time windows. Analyze them together.",
+        "You are a text-only assistant. Respond only in GitHub-flavored Markdown. Do not use any HTML tags like <p>, <strong>, <ul>, <li>, or <br>.",
+        "",
+        "=== REQUIRED ANALYSIS ===",
+        "Based on ALL the data provided for every alarm (alarm details, interpretation guides, historical data, and diagnosis data), provide:",
+        "",
+        "1. **Alert Interpretation**: What do these alarms indicate together? Consider the historical trends.",
+        "2. **Root Cause Analysis**: Which alarm most likely reflects the common root cause, and which ones are its symptoms? Refer to the alarms by number. If some alarms are unrelated, say so.",
+        "3. **Impact Assessment**: What is the potential impact on the system?",
+        "4. **Remediation Steps**: What specific steps should be taken to fix the problem?",
+        "",
+        "IMPORTANT: ",
+        "- Respond in GitHub-style Markdown, no HTML tags.",
+        "- Provide response in English language alone.",
+        "- Reference the historical data in your analysis if provided",
+        "- Reference the diagnosis data in your analysis if provided",
+        "- Keep your analysis concise but comprehensive",
+        "");
+    
     @Autowired
     private Environment env;
     
     @Autowired
-    private OllamaService ollamaService;
+    private LlmClient llmClient;
+    
+    @Autowired
+    private LlmTelemetry llmTelemetry;
+    
+    @Autowired
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+    
+    @Autowired
+    private MeasureHelpIndex measureHelpIndex;
+    
+    @Autowired
+    private AlarmGroupRegistry alarmGroupRegistry;
     
     @Autowired
     private TemplateEngine templateEngine;
@@ -88,12 +159,20 @@ public class AlarmAnalysisReportService {
         logger.info("Found {} alarm analysis zip files to process", zipFiles.length);
         System.out.println("Found " + zipFiles.length + " alarm analysis zip file(s) to process.");
         
+        llmClient.warmUp();
+        
+        // Run-wide time budget for AI analysis; -1 means unlimited
+        long budgetSeconds = Long.parseLong(env.getProperty("prepare.report.alarm.analysis.ai.time.budget.seconds", "-1"));
+        long aiDeadline = budgetSeconds < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + budgetSeconds * 1000;
+        
         for (File zipFile : zipFiles) {
             try {
-                generateHtmlReport(zipFile);
+                generateHtmlReport(zipFile, aiDeadline);
             } catch (Exception e) {
                 logger.error("Failed to generate HTML report for {}", zipFile.getName(), e);
                 System.err.println("Error processing " + zipFile.getName() + ": " + e.getMessage());
+            } finally {
+                llmTelemetry.discardUnclaimedCalls();
             }
         }
         
@@ -102,9 +181,13 @@ public class AlarmAnalysisReportService {
     }
     
     /**
-     * Generates an HTML report for a single alarm analysis zip file
+     * Generates an HTML report for a single alarm analysis zip file.
+     * Alarms are read first and then analyzed by the AI in priority order (see {@link #ANALYSIS_ORDER}),
+     * so that alarms still waiting when the time budget runs out are the least important ones.
+     * 
+     * @param aiDeadline Time (epoch millis) after which alarms are reported without AI analysis
      */
-    private void generateHtmlReport(File zipFile) throws IOException {
+    private void generateHtmlReport(File zipFile, long aiDeadline) throws IOException {
         logger.info("Processing zip file: {}", zipFile.getName());
         System.out.println("Processing: " + zipFile.getName());
         
@@ -114,6 +197,7 @@ public class AlarmAnalysisReportService {
         
         // Prepare data for Thymeleaf template
         List<AlarmReportData> alarms = new ArrayList<>();
+        PriorityQueue<PendingAlarm> analysisQueue = new PriorityQueue<>(ANALYSIS_ORDER);
         
         // Step 1: Read alarm_analysis zip file
         try (ZipFile zip = new ZipFile(zipFile)) {
@@ -153,6 +237,7 @@ public class AlarmAnalysisReportService {
                     alarmReport.setComponentType(representativeAlert.get("componentType").asText());
                     alarmReport.setTest(test);
                     alarmReport.setMeasure(measure);
+                    alarmReport.setAnchorId("alarm-" + alarmCount);
                     alarmReport.setPriority(representativeAlert.get("priority").asText());
                     alarmReport.setLayer(representativeAlert.get("layer").asText());
                     alarmReport.setDescription(representativeAlert.get("description").asText());
@@ -175,17 +260,16 @@ public class AlarmAnalysisReportService {
                     // Add metric graph if available
                     if (alarmData.has("measureGraphBase64") && !alarmData.get("measureGraphBase64").isNull()) {
                         alarmReport.setMeasureGraphBase64(alarmData.get("measureGraphBase64").asText());
+                        // Not used by the prompt; do not keep a second copy while the alarm waits in the queue
+                        ((ObjectNode) alarmData).remove("measureGraphBase64");
                     }
                     
-                    // Step 4: Get Ollama interpretation with logging
-                    String entryName = entry.getName();
-                    String ollamaInterpretation = getOllamaInterpretationWithLogging(
-                        representativeAlert, alarmData, alarmReport.getInterpretation(), entryName
-                    );
-                    alarmReport.setAiAnalysis(ollamaInterpretation);
-                    
-                    // Add to list
-                    alarms.add(alarmReport);
+                    // Step 4: Queue for Ollama interpretation
+                    PendingAlarm pending = new PendingAlarm(alarmReport, representativeAlert, alarmData,
+                            entry.getName(), alarmCount);
+                    pending.groupId = alarmData.path("groupId").asText(null);
+                    pending.fingerprint = alarmData.path("fingerprint").asText(null);
+                    analysisQueue.add(pending);
                     
                 } catch (Exception e) {
                     logger.error("Error processing alarm file {}", entry.getName(), e);
@@ -200,6 +284,20 @@ public class AlarmAnalysisReportService {
             }
         }
         
+        // Step 5: Get Ollama interpretation with logging, most important alarms first
+        List<PendingAlarm> ordered = new ArrayList<>(analysisQueue.size());
+        while (!analysisQueue.isEmpty()) {
+            ordered.add(analysisQueue.poll());
+        }
+        int skipped = analyzeAlarms(correlate(ordered), aiDeadline);
+        alarmGroupRegistry.save();
+        // Analysis order, whatever order the workers finished in
+        ordered.forEach(pending -> alarms.add(pending.report));
+        if (skipped > 0) {
+            logger.warn("AI time budget used up: {} alarm(s) of {} reported without AI analysis", skipped, zipFile.getName());
+            System.out.println("  AI time budget used up, " + skipped + " alarm(s) reported without AI analysis");
+        }
+        
         // Sort alarms by priority (Critical -> Major -> Minor)
         alarms.sort(new Comparator<AlarmReportData>() {
             @Override
@@ -236,6 +334,168 @@ public class AlarmAnalysisReportService {
         System.out.println("  Report saved: " + htmlFileName);
     }
     
+    /**
+     * Groups correlated alarms (see {@link AlarmCorrelator}) into one analysis job each, keeping the analysis
+     * order; every alarm is a job of its own when {@code prepare.report.alarm.analysis.correlation} is off.
+     * The first alarm of a group gets the consolidated analysis and lists the others. Alarms collected without
+     * their data because they are unchanged are never grouped: they reuse their own earlier analysis, and a group
+     * analysis would lack their evidence.
+     */
+    private List<List<PendingAlarm>> correlate(List<PendingAlarm> ordered) {
+        if (!Boolean.parseBoolean(env.getProperty("prepare.report.alarm.analysis.correlation", "true"))) {
+            return ordered.stream().map(List::of).toList();
+        }
+        AlarmCorrelator correlator = new AlarmCorrelator(
+                Duration.ofMinutes(Long.parseLong(env.getProperty("prepare.report.alarm.analysis.correlation.window.minutes", "15"))),
+                Integer.parseInt(env.getProperty("prepare.report.alarm.analysis.correlation.max.alarms", "20")));
+        Map<PendingAlarm, List<PendingAlarm>> clusterByFirst = new IdentityHashMap<>();
+        for (List<PendingAlarm> cluster : correlator.cluster(
+                ordered.stream().filter(pending -> !pending.alarmData.path("unchanged").asBoolean()).toList(),
+                pending -> pending.report)) {
+            clusterByFirst.put(cluster.get(0), cluster);
+        }
+        List<List<PendingAlarm>> jobs = new ArrayList<>();
+        for (PendingAlarm pending : ordered) {
+            if (pending.alarmData.path("unchanged").asBoolean()) {
+                jobs.add(List.of(pending));
+            } else if (clusterByFirst.containsKey(pending)) {
+                jobs.add(clusterByFirst.get(pending));
+            }
+        }
+        int groups = 0;
+        for (List<PendingAlarm> job : jobs) {
+            if (job.size() > 1) {
+                groups++;
+                AlarmReportData consolidated = job.get(0).report;
+                consolidated.setCorrelatedAlarms(job.subList(1, job.size()).stream().map(pending -> pending.report).toList());
+                consolidated.setCorrelationSummary("Consolidated analysis of " + job.size() + " correlated alarms on "
+                        + consolidated.getComponentName() + ", layer " + consolidated.getLayer());
+            }
+        }
+        if (groups > 0) {
+            logger.info("Correlated {} alarm(s) into {} analysis job(s), {} of them groups of related alarms",
+                    ordered.size(), jobs.size(), groups);
+            System.out.println("  Correlated " + ordered.size() + " alarm(s) into " + jobs.size() + " AI request(s)");
+        }
+        return jobs;
+    }
+    
+    /**
+     * Gets the AI analysis of the alarms on {@code prepare.report.alarm.analysis.thread.pool.size} worker threads
+     * (sized to the adaptive concurrency limit when that is on). Each job is a single alarm or a group of
+     * correlated alarms analyzed with one prompt. Workers take the jobs in list order, so the most important
+     * ones are still sent first. An alarm that fails is replaced by an error card. A job whose alarms are
+     * unchanged since an earlier run takes that run's analysis from the {@link AlarmGroupRegistry}.
+     * 
+     * @return The number of alarms skipped because the time budget ran out
+     */
+    private int analyzeAlarms(List<List<PendingAlarm>> jobs, long aiDeadline) {
+        int poolSize = Math.max(1, Integer.parseInt(env.getProperty("prepare.report.alarm.analysis.thread.pool.size", "1")));
+        if (concurrencyLimiter.isEnabled()) {
+            poolSize = concurrencyLimiter.getMaxLimit();
+        }
+        poolSize = Math.min(poolSize, Math.max(1, jobs.size()));
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger skipped = new AtomicInteger();
+        AtomicInteger reused = new AtomicInteger();
+        boolean reuse = alarmGroupRegistry.isEnabled()
+                && Boolean.parseBoolean(env.getProperty("prepare.report.alarm.analysis.reuse.unchanged", "true"));
+        Runnable worker = () -> {
+            int index;
+            while ((index = next.getAndIncrement()) < jobs.size()) {
+                List<PendingAlarm> job = jobs.get(index);
+                PendingAlarm pending = job.get(0);
+                if (System.currentTimeMillis() >= aiDeadline) {
+                    skipped.addAndGet(job.size());
+                    job.forEach(member -> member.report.setAiAnalysis(getBudgetSkippedMessage()));
+                    continue;
+                }
+                List<String> groupIds = job.stream().map(member -> member.groupId).toList();
+                List<String> fingerprints = job.stream().map(member -> member.fingerprint).toList();
+                AlarmGroupRegistry.Entry previous = reuse ? alarmGroupRegistry.findAnalysis(groupIds, fingerprints) : null;
+                if (previous != null) {
+                    reused.incrementAndGet();
+                    logger.info("Reusing the analysis of {} from {}, its alarms are unchanged", pending.entryName,
+                            formatTime(previous.getAnalyzedAt()));
+                    pending.report.setAiAnalysis(getUnchangedMessage(previous.getAnalyzedAt()) + previous.getAnalysis());
+                    for (PendingAlarm member : job.subList(1, job.size())) {
+                        member.report.setAiAnalysis(getCorrelatedMessage(pending.report, job.size()));
+                    }
+                    continue;
+                }
+                if (job.stream().anyMatch(member -> member.alarmData.path("unchanged").asBoolean())) {
+                    logger.warn("No earlier analysis found for {}, whose data was not collected again; analyzing the alarm details only",
+                            pending.entryName);
+                }
+                System.out.println("  Analyzing alarm " + started.incrementAndGet() + "/" + jobs.size()
+                        + " (" + pending.report.getPriority() + "): " + pending.entryName
+                        + (job.size() > 1 ? " with " + (job.size() - 1) + " correlated alarm(s)" : ""));
+                try {
+                    LlmResponse analysis = job.size() == 1
+                            ? getOllamaInterpretationWithLogging(pending.representativeAlert, pending.alarmData,
+                                    pending.report.getInterpretation(), pending.entryName)
+                            : getClusterInterpretationWithLogging(job);
+                    pending.report.setAiAnalysis(analysis.getText());
+                    // Error and fallback messages are shown in this report only, never reused
+                    if (reuse && !analysis.isError()) {
+                        alarmGroupRegistry.recordAnalysis(groupIds, fingerprints, analysis.getText());
+                    }
+                } catch (Exception e) {
+                    logger.error("Error analyzing alarm {}", pending.entryName, e);
+                    AlarmReportData errorAlarm = createErrorAlarm(pending.entryName, e.getMessage());
+                    errorAlarm.setAnchorId(pending.report.getAnchorId());
+                    errorAlarm.setCorrelatedAlarms(pending.report.getCorrelatedAlarms());
+                    pending.report = errorAlarm;
+                }
+                for (PendingAlarm member : job.subList(1, job.size())) {
+                    member.report.setAiAnalysis(getCorrelatedMessage(pending.report, job.size()));
+                }
+            }
+        };
+        
+        if (poolSize == 1) {
+            worker.run();
+            logReused(reused.get());
+            return skipped.get();
+        }
+        logger.info("Analyzing {} alarm job(s) on {} threads", jobs.size(), poolSize);
+        AtomicInteger threadCounter = new AtomicInteger(1);
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize, r -> {
+            Thread t = new Thread(r);
+            t.setName("alarmAiThread-" + threadCounter.getAndIncrement());
+            return t;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < poolSize; i++) {
+                futures.add(executor.submit(worker));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logger.error("Interrupted while waiting for alarm analysis", e);
+                    break;
+                } catch (ExecutionException e) {
+                    logger.error("Alarm analysis worker failed", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        logReused(reused.get());
+        return skipped.get();
+    }
+    
+    private void logReused(int reused) {
+        if (reused > 0) {
+            logger.info("Reused the earlier analysis of {} unchanged alarm job(s)", reused);
+            System.out.println("  Reused the earlier analysis of " + reused + " unchanged alarm(s)");
+        }
+    }
+    
     /**
      * Reads a zip entry as a string
      */
@@ -249,129 +509,42 @@ public class AlarmAnalysisReportService {
      * Populates interpretation data from eghelp resources based on test and measure
      */
     private void populateInterpretation(AlarmReportData alarmReport, String test, String measure) {
-        try {
-        	String helpFileName=test.replaceAll("/", "");
-            String path = "eghelp/" + helpFileName + ".json";
-            logger.info("Looking for help file at path: {}", path);
-			ClassPathResource resource = new ClassPathResource(path);
-            if (!resource.exists()) {
-                logger.warn("No help file found for test: {}", helpFileName);
-                throw new MeasureHelpNotFoundException("No help file found for test: " + helpFileName);
-                //alarmReport.setInterpretation("No interpretation data available for this test.");
-//                return;
-            }
-            
-            String content = new String(resource.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
-            JsonNode measurements = objectMapper.readTree(content);
-            
-            for (JsonNode measurement : measurements) {
-            	logger.debug("Checking measurement: {}", measurement.toString());
-                JsonNode jsonNode = extractedJsonNode(measurement, "Measurement");
-                if (jsonNode == null) {
-					logger.warn("No 'Measurement' field found in help file for test '{}'", test);
-					throw new MeasureHelpNotFoundException("No 'Measurement' field found in help file for test: " + test);
-				}
-				if (jsonNode.asText().equalsIgnoreCase(measure)) {
-                    alarmReport.setInterpretation("found");
-                    alarmReport.setInterpretationDescription(extractedJsonNode(measurement, "Description").asText());
-                    JsonNode unitNode;
-					try {
-						unitNode = extractedJsonNode(measurement, "MeasurementUnit");
-					} catch (MeasureHelpNotFoundException e) {
-						try {
-							unitNode = extractedJsonNode(measurement, "unit");
-						} catch (MeasureHelpNotFoundException e1) {
-							unitNode = extractedJsonNode(measurement, "measurementUnit");
-						}
-					}
-                    
-					alarmReport.setInterpretationUnit(unitNode.asText());
-                    alarmReport.setInterpretationText(extractedJsonNode(measurement, "Interpretation").asText());
-                    return;
-                }
-            }
-            
+        if (!measureHelpIndex.hasTest(test)) {
+            logger.warn("No help file found for test: {}", test);
+            alarmReport.setInterpretation("Error reading interpretation data: No help file found for test: " + test.replaceAll("/", ""));
+            return;
+        }
+        MeasureHelp measureHelp = measureHelpIndex.find(test, measure);
+        if (measureHelp == null) {
             logger.warn("Measure '{}' not found in help file for test '{}'", measure, test);
             alarmReport.setInterpretation("No specific interpretation found for this measure.");
-            
-        } catch (Exception e) {
-            logger.error("Error reading interpretation for test: {}, measure: {}", test, measure, e);
-            alarmReport.setInterpretation("Error reading interpretation data: " + e.getMessage());
+            return;
         }
+        alarmReport.setInterpretation("found");
+        alarmReport.setInterpretationDescription(measureHelp.getDescription());
+        alarmReport.setInterpretationUnit(measureHelp.getMeasurementUnit());
+        alarmReport.setInterpretationText(measureHelp.getInterpretation());
     }
-
-	private JsonNode extractedJsonNode(JsonNode measurement, String key) {
-		JsonNode jsonNode = measurement.get(key);
-		if (jsonNode == null) {
-			jsonNode = measurement.get(key.toLowerCase());
-		}
-		if (jsonNode == null) {
-			jsonNode = measurement.get(key.toUpperCase());
-		}
-		if (jsonNode == null && !key.equalsIgnoreCase("troubleshootingSteps")) {
-			throw new MeasureHelpNotFoundException("No '" + key + "' field found in measurement: " + measurement.toString());
-		}
-		return jsonNode;
-	}
     
     /**
      * Gets interpretation HTML string from resources (for Ollama prompt)
      */
     private String getInterpretationStringFromResources(String test, String measure) {
-        try {
-            ClassPathResource resource = new ClassPathResource("eghelp/" + test + ".json");
-            if (!resource.exists()) {
-                return "No interpretation data available for this test.";
-            }
-            
-            String content = new String(resource.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
-            JsonNode measurements = objectMapper.readTree(content);
-            
-            for (JsonNode measurement : measurements) {
-            	JsonNode extractedJsonNode = this.extractedJsonNode(measurement, "Measurement");
-                if (extractedJsonNode.asText().equals(measure)) {
-                    StringBuilder interpretation = new StringBuilder();
-                    JsonNode description = this.extractedJsonNode(measurement, "Description");
-                    JsonNode interpretationJsonNode = this.extractedJsonNode(measurement, "Interpretation");
-                    JsonNode troubleshootingStepsJsonNode = this.extractedJsonNode(measurement, "troubleshootingSteps");
-					JsonNode measurementUnit;
-					try {
-						measurementUnit = this.extractedJsonNode(measurement, "MeasurementUnit");
-					} catch (Exception e) {
-						try {
-							measurementUnit = this.extractedJsonNode(measurement, "measurementUnit");
-						} catch (Exception e1) {
-							measurementUnit = this.extractedJsonNode(measurement, "Unit");
-						}
-					}
-					
-					String prompt = "Not enough information available.";
-					
-					if (troubleshootingStepsJsonNode!=null) {
-						ArrayNode stepsArray = (ArrayNode) troubleshootingStepsJsonNode;
-						prompt = StreamSupport.stream(stepsArray.spliterator(), false)
-						        .map(JsonNode::asText)
-						        .collect(Collectors.joining(".\r\n\t* "));  // or any separator you like
-					}
-					
-					interpretation.append("Description: ")
-                        .append(description.asText())
-                        .append(". \r\nUnit: ")
-                        .append(measurementUnit.asText())
-                        .append(". \r\nInterpretation: ")
-                        .append(interpretationJsonNode.asText())
-                        .append(". \r\nTroubleshooting Steps: \r\n\t* ")
-                        .append(prompt);
-                    return interpretation.toString();
-                }
-            }
-            
+        if (!measureHelpIndex.hasTest(test)) {
+            return "No interpretation data available for this test.";
+        }
+        MeasureHelp measureHelp = measureHelpIndex.find(test, measure);
+        if (measureHelp == null) {
             return "No specific interpretation found for this measure.";
-            
-        } catch (Exception e) {
-            logger.error("Error reading interpretation for test: {}, measure: {}", test, measure, e);
-            return "Error reading interpretation data: " + e.getMessage();
         }
+        String steps = "Not enough information available.";
+        if (measureHelp.getTroubleshootingSteps() != null) {
+            steps = String.join(".\r\n\t* ", measureHelp.getTroubleshootingSteps());
+        }
+        return "Description: " + measureHelp.getDescription()
+                + ". \r\nUnit: " + measureHelp.getMeasurementUnit()
+                + ". \r\nInterpretation: " + measureHelp.getInterpretation()
+                + ". \r\nTroubleshooting Steps: \r\n\t* " + steps;
     }
     
     /**
@@ -394,13 +567,143 @@ public class AlarmAnalysisReportService {
         return errorAlarm;
     }
     
+    private String getCorrelatedMessage(AlarmReportData consolidated, int alarms) {
+        return "<div class='alert alert-info'>" +
+               "<strong>Analyzed with correlated alarms</strong><br>" +
+               "This alarm was analyzed together with " + (alarms - 1) + " other alarm(s) on the same component and layer. " +
+               "See the <a href='#" + consolidated.getAnchorId() + "'>consolidated analysis</a> under " +
+               escapeHtml(consolidated.getComponentName() + " - " + consolidated.getMeasure()) + "." +
+               "</div>";
+    }
+    
+    private String getUnchangedMessage(long analyzedAt) {
+        return "<div class='alert alert-info'>" +
+               "<strong>Unchanged since " + formatTime(analyzedAt) + "</strong><br>" +
+               "Only the duration and repeat count of this alarm changed since it was analyzed; the analysis of that run is shown." +
+               "</div>";
+    }
+    
+    private static String formatTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault())
+                .format(DateTimeFormatter.ofPattern("MMMM dd, yyyy 'at' hh:mm a"));
+    }
+    
+    private String getBudgetSkippedMessage() {
+        return "<div class='alert alert-info'>" +
+               "<strong>AI analysis skipped (budget)</strong><br>" +
+               "The AI analysis time budget of this run was used up before this alarm was reached. " +
+               "Please review the alarm details and interpretation guide above for manual analysis." +
+               "</div>";
+    }
+    
     /**
      * Gets interpretation from Ollama service with logging
      */
-    private String getOllamaInterpretationWithLogging(JsonNode representativeAlert, 
+    private LlmResponse getOllamaInterpretationWithLogging(JsonNode representativeAlert, 
                                           JsonNode alarmData, 
                                           String interpretation,
                                           String entryName) {
+        // Form the prompt: the alarm specific part, the instructions are in ALARM_SYSTEM_PROMPT
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("=== ALARM DETAILS ===\n");
+        appendAlarmDetails(prompt, representativeAlert, alarmData);
+        prompt.append("\nProvide the required analysis for this alarm.\n");
+        return generateAnalysis(ALARM_SYSTEM_PROMPT, prompt.toString(), entryName);
+    }
+    
+    /**
+     * Gets one consolidated interpretation for a group of correlated alarms, the most important one first
+     */
+    private LlmResponse getClusterInterpretationWithLogging(List<PendingAlarm> job) {
+        AlarmReportData first = job.get(0).report;
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("=== CORRELATED ALARMS ===\n");
+        prompt.append(job.size()).append(" alarms were raised on component ").append(first.getComponentName())
+                .append(", layer ").append(first.getLayer()).append(", within overlapping time windows.\n");
+        for (int i = 0; i < job.size(); i++) {
+            prompt.append("\n=== ALARM ").append(i + 1).append(" OF ").append(job.size()).append(": DETAILS ===\n");
+            appendAlarmDetails(prompt, job.get(i).representativeAlert, job.get(i).alarmData);
+        }
+        prompt.append("\nProvide the required analysis for this group of alarms.\n");
+        return generateAnalysis(CLUSTER_SYSTEM_PROMPT, prompt.toString(), job.get(0).entryName.replace(".json", "") + ".cluster");
+    }
+    
+    /**
+     * Appends the details, interpretation guide, historical data and diagnosis data of an alarm to a prompt
+     */
+    private void appendAlarmDetails(StringBuilder prompt, JsonNode representativeAlert, JsonNode alarmData) {
+        prompt.append("Component: ").append(representativeAlert.get("componentName").asText()).append("\n");
+        prompt.append("Component Type: ").append(representativeAlert.get("componentType").asText()).append("\n");
+        prompt.append("Test: ").append(representativeAlert.get("test").asText()).append("\n");
+        prompt.append("Measure: ").append(representativeAlert.get("measure").asText()).append("\n");
+        prompt.append("Priority: ").append(representativeAlert.get("priority").asText()).append("\n");
+        prompt.append("Description: ").append(representativeAlert.get("description").asText()).append("\n");
+        prompt.append("Start Time: ").append(representativeAlert.get("startTime").asText()).append("\n");
+        prompt.append("Duration: ").append(representativeAlert.get("duration").asText()).append("\n");
+        
+        if (representativeAlert.has("repeatCount")) {
+            prompt.append("Repeat Count: ").append(representativeAlert.get("repeatCount").asInt()).append(" times\n");
+        }
+        
+        prompt.append("\n=== INTERPRETATION GUIDE ===\n");
+        String interpretationForPrompt = getInterpretationStringFromResources(
+            representativeAlert.get("test").asText(),
+            representativeAlert.get("measure").asText()
+        );
+        prompt.append(interpretationForPrompt).append("\n");
+        
+        // Add historical data if available
+        if (alarmData.has("historicalData") && !alarmData.get("historicalData").isNull()) {
+            JsonNode historicalData = alarmData.get("historicalData");
+            prompt.append("\n=== HISTORICAL DATA ===\n");
+            prompt.append("The following historical trend data is available for this measure:\n");
+            
+            if (historicalData.isArray() && historicalData.size() > 0) {
+                prompt.append("Data Points: ").append(historicalData.size()).append("\n");
+                // Add sample of historical data
+                int sampleSize = Math.min(5, historicalData.size());
+                prompt.append("Sample of recent data points:\n");
+                for (int i = 0; i < sampleSize; i++) {
+                    JsonNode dataPoint = historicalData.get(i);
+                    prompt.append("  - ").append(dataPoint.toString()).append("\n");
+                }
+                if (historicalData.size() > 5) {
+                    prompt.append("  ... and ").append(historicalData.size() - 5).append(" more data points\n");
+                }
+            } else if (historicalData.isObject()) {
+                prompt.append(historicalData.toString()).append("\n");
+            } else {
+                prompt.append("Historical data available but in unexpected format.\n");
+            }
+            prompt.append("\nIMPORTANT: Analyze the historical trend to identify patterns, anomalies, or changes over time.\n");
+        }
+        
+        // Add diagnosis data if available
+        if (alarmData.has("diagnosisData") && !alarmData.get("diagnosisData").isNull()) {
+            JsonNode diagnosisData = alarmData.get("diagnosisData");
+            prompt.append("\n=== DIAGNOSIS DATA ===\n");
+            prompt.append("Detailed diagnostic information:\n");
+            
+            if (diagnosisData.isArray() && diagnosisData.size() > 0) {
+                for (int i = 0; i < diagnosisData.size(); i++) {
+                    JsonNode diagnosis = diagnosisData.get(i);
+                    prompt.append("Diagnosis ").append(i + 1).append(":\n");
+                    prompt.append(diagnosis.toPrettyString()).append("\n");
+                }
+            } else if (diagnosisData.isObject()) {
+                prompt.append(diagnosisData.toPrettyString()).append("\n");
+            } else {
+                prompt.append(diagnosisData.toString()).append("\n");
+            }
+            prompt.append("\nIMPORTANT: Use the diagnosis data to identify specific issues and root causes.\n");
+        }
+    }
+    
+    /**
+     * Sends a prompt to the LLM backend, logging prompt and response under logs/ai, and returns the answer as HTML.
+     * The response is an error response if the backend failed or is disabled.
+     */
+    private LlmResponse generateAnalysis(String systemPrompt, String prompt, String entryName) {
         try {
             // Create logs/ai directory if it doesn't exist
             Path logsDir = Paths.get("logs", "ai");
@@ -411,111 +714,45 @@ public class AlarmAnalysisReportService {
             Path promptLogPath = logsDir.resolve(baseFileName + ".prompt.log");
             Path responseLogPath = logsDir.resolve(baseFileName + ".response.log");
             
-            // Form the prompt
-            StringBuilder prompt = new StringBuilder();
-            prompt.append("You are an expert system performance analyst. Analyze the following alarm data comprehensively:\n\n");
-            prompt.append("You are a text-only assistant. Respond only in GitHub-flavored Markdown. Do not use any HTML tags like <p>, <strong>, <ul>, <li>, or <br>.\n");
-            
-            prompt.append("=== ALARM DETAILS ===\n");
-            prompt.append("Component: ").append(representativeAlert.get("componentName").asText()).append("\n");
-            prompt.append("Component Type: ").append(representativeAlert.get("componentType").asText()).append("\n");
-            prompt.append("Test: ").append(representativeAlert.get("test").asText()).append("\n");
-            prompt.append("Measure: ").append(representativeAlert.get("measure").asText()).append("\n");
-            prompt.append("Priority: ").append(representativeAlert.get("priority").asText()).append("\n");
-            prompt.append("Description: ").append(representativeAlert.get("description").asText()).append("\n");
-            prompt.append("Start Time: ").append(representativeAlert.get("startTime").asText()).append("\n");
-            prompt.append("Duration: ").append(representativeAlert.get("duration").asText()).append("\n");
-            
-            if (representativeAlert.has("repeatCount")) {
-                prompt.append("Repeat Count: ").append(representativeAlert.get("repeatCount").asInt()).append(" times\n");
+            LlmRequest request = new LlmRequest(systemPrompt, prompt);
+            request.setTag(entryName);
+            request.setMaxOutputTokens(Integer.parseInt(env.getProperty("ollama.num_predict.alarm", "2048")));
+            String stop = env.getProperty("ollama.stop.alarm");
+            if (stop != null && !stop.isEmpty()) {
+                request.setStop(List.of(stop.split(",")));
             }
             
-            prompt.append("\n=== INTERPRETATION GUIDE ===\n");
-            String interpretationForPrompt = getInterpretationStringFromResources(
-                representativeAlert.get("test").asText(),
-                representativeAlert.get("measure").asText()
-            );
-            prompt.append(interpretationForPrompt).append("\n");
-            
-            // Add historical data if available
-            if (alarmData.has("historicalData") && !alarmData.get("historicalData").isNull()) {
-                JsonNode historicalData = alarmData.get("historicalData");
-                prompt.append("\n=== HISTORICAL DATA ===\n");
-                prompt.append("The following historical trend data is available for this measure:\n");
-                
-                if (historicalData.isArray() && historicalData.size() > 0) {
-                    prompt.append("Data Points: ").append(historicalData.size()).append("\n");
-                    // Add sample of historical data
-                    int sampleSize = Math.min(5, historicalData.size());
-                    prompt.append("Sample of recent data points:\n");
-                    for (int i = 0; i < sampleSize; i++) {
-                        JsonNode dataPoint = historicalData.get(i);
-                        prompt.append("  - ").append(dataPoint.toString()).append("\n");
-                    }
-                    if (historicalData.size() > 5) {
-                        prompt.append("  ... and ").append(historicalData.size() - 5).append(" more data points\n");
-                    }
-                } else if (historicalData.isObject()) {
-                    prompt.append(historicalData.toString()).append("\n");
-                } else {
-                    prompt.append("Historical data available but in unexpected format.\n");
-                }
-                prompt.append("\nIMPORTANT: Analyze the historical trend to identify patterns, anomalies, or changes over time.\n");
-            }
-            
-            // Add diagnosis data if available
-            if (alarmData.has("diagnosisData") && !alarmData.get("diagnosisData").isNull()) {
-                JsonNode diagnosisData = alarmData.get("diagnosisData");
-                prompt.append("\n=== DIAGNOSIS DATA ===\n");
-                prompt.append("Detailed diagnostic information:\n");
-                
-                if (diagnosisData.isArray() && diagnosisData.size() > 0) {
-                    for (int i = 0; i < diagnosisData.size(); i++) {
-                        JsonNode diagnosis = diagnosisData.get(i);
-                        prompt.append("Diagnosis ").append(i + 1).append(":\n");
-                        prompt.append(diagnosis.toPrettyString()).append("\n");
-                    }
-                } else if (diagnosisData.isObject()) {
-                    prompt.append(diagnosisData.toPrettyString()).append("\n");
-                } else {
-                    prompt.append(diagnosisData.toString()).append("\n");
-                }
-                prompt.append("\nIMPORTANT: Use the diagnosis data to identify specific issues and root causes.\n");
-            }
-            
-            prompt.append("\n=== REQUIRED ANALYSIS ===\n");
-            prompt.append("Based on ALL the data provided above (alarm details, interpretation guide, historical data, and diagnosis data), provide:\n\n");
-            prompt.append("1. **Alert Interpretation**: What does this alarm indicate? Consider the historical trends.\n");
-            prompt.append("2. **Root Cause Analysis**: What are the likely root causes? Use the diagnosis data if available.\n");
-            prompt.append("3. **Impact Assessment**: What is the potential impact on the system?\n");
-            prompt.append("4. **Remediation Steps**: What specific steps should be taken to fix the problem?\n");
-            prompt.append("\nIMPORTANT: \n");
-            prompt.append("- Respond in GitHub-style Markdown, no HTML tags.\n");
-            prompt.append("- Provide response in English language alone.\n");
-            prompt.append("- Reference the historical data in your analysis if provided\n");
-            prompt.append("- Reference the diagnosis data in your analysis if provided\n");
-            prompt.append("- Keep your analysis concise but comprehensive\n");
-            
             // Write prompt to log file
-            Files.writeString(promptLogPath, prompt.toString(), StandardCharsets.UTF_8);
+            Files.writeString(promptLogPath, request.getFullPrompt(), StandardCharsets.UTF_8);
             logger.info("Prompt written to: {}", promptLogPath);
             
-            // Get response from Ollama
-            String markdownResponse = ollamaService.generateResponse(prompt.toString());
+            // Get response from the LLM backend
+            LlmResponse response = llmClient.generate(request);
+            String markdownResponse = response.getText();
             
-            // Write response to log file
-            Files.writeString(responseLogPath, markdownResponse, StandardCharsets.UTF_8);
+            // Write response to log file, with the call's token and timing statistics
+            String logHeader = "=".repeat(80) + "\n"
+                    + "AI RESPONSE LOG\n"
+                    + "Entry: " + entryName + "\n"
+                    + llmTelemetry.formatLogHeader(entryName)
+                    + "=".repeat(80) + "\n\n";
+            Files.writeString(responseLogPath, logHeader + markdownResponse, StandardCharsets.UTF_8);
             logger.info("Response written to: {}", responseLogPath);
             
             // Convert markdown to HTML
-            String htmlResponse = convertMarkdownToHtml(markdownResponse);
-            
-            return htmlResponse;
+            if (response.isError()) {
+                logger.warn("No AI analysis for {}, the backend returned an error", entryName);
+            }
+            response.setText(convertMarkdownToHtml(markdownResponse));
+            return response;
             
         } catch (Exception e) {
             logger.error("Error getting Ollama interpretation", e);
-            return "<div class='alert alert-warning'><strong>AI analysis temporarily unavailable:</strong> " + 
-                   escapeHtml(e.getMessage()) + "</div>";
+            LlmResponse response = new LlmResponse();
+            response.setText("<div class='alert alert-warning'><strong>AI analysis temporarily unavailable:</strong> " + 
+                   escapeHtml(e.getMessage()) + "</div>");
+            response.setError(true);
+            return response;
         }
     }
     
@@ -558,4 +795,26 @@ public class AlarmAnalysisReportService {
                   .replace("\"", "&quot;")
                   .replace("'", "&#39;");
     }
+
+    /**
+     * An alarm read from the zip and waiting for AI analysis
+     */
+    private static class PendingAlarm {
+        private AlarmReportData report; // replaced by an error card if the analysis fails
+        private final JsonNode representativeAlert;
+        private final JsonNode alarmData;
+        private final String entryName;
+        private final int sequence;
+        private String groupId; // null in zips collected before group IDs were stable
+        private String fingerprint; // see AlarmGroupRegistry
+        
+        PendingAlarm(AlarmReportData report, JsonNode representativeAlert, JsonNode alarmData,
+                     String entryName, int sequence) {
+            this.report = report;
+            this.representativeAlert = representativeAlert;
+            this.alarmData = alarmData;
+            this.entryName = entryName;
+            this.sequence = sequence;
+        }
+    }
 }
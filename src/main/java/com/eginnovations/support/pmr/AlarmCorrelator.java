@@ -0,0 +1,137 @@
+package com.eginnovations.support.pmr;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.eginnovations.support.pmr.model.AlarmReportData;
+
+/**
+ * Groups alarms that most likely share a root cause, so that they can be analyzed with one prompt: alarms of
+ * the same component and layer whose active periods (start time plus duration) overlap or are at most
+ * {@code slack} apart. A disk filling up or a GC storm typically raises many such alarms within minutes.
+ * <p>
+ * Alarms whose start time cannot be parsed are never grouped. An unparseable duration counts as zero, so such
+ * an alarm only joins alarms active when it started (plus the slack).
+ */
+class AlarmCorrelator {
+
+    private static final List<DateTimeFormatter> START_FORMATS = List.of(
+            DateTimeFormatter.ofPattern("MMM d, yyyy H:mm[:ss]", Locale.ENGLISH),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd H:mm[:ss]"),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'H:mm[:ss]"));
+    private static final Pattern DURATION_PART = Pattern.compile(
+            "(\\d+)\\s*(d|days?|h|hrs?|hours?|m|mins?|minutes?|s|secs?|seconds?)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CLOCK = Pattern.compile("(\\d+):(\\d{2})(?::(\\d{2}))?");
+
+    private final Duration slack;
+    private final int maxAlarms;
+
+    /**
+     * @param maxAlarms largest group; -1 means unlimited
+     */
+    AlarmCorrelator(Duration slack, int maxAlarms) {
+        this.slack = slack;
+        this.maxAlarms = maxAlarms;
+    }
+
+    /**
+     * Clusters the alarms. The clusters come in the order of their first alarm in the input, and the alarms
+     * of a cluster keep their input order, so the first alarm of each cluster is its most important one when
+     * the input is sorted by importance.
+     */
+    <T> List<List<T>> cluster(List<T> alarms, Function<T, AlarmReportData> report) {
+        Map<String, List<Integer>> byComponentAndLayer = new LinkedHashMap<>();
+        LocalDateTime[] starts = new LocalDateTime[alarms.size()];
+        LocalDateTime[] ends = new LocalDateTime[alarms.size()];
+        int[] clusterOf = new int[alarms.size()];
+        int clusters = 0;
+        for (int i = 0; i < alarms.size(); i++) {
+            AlarmReportData alarm = report.apply(alarms.get(i));
+            starts[i] = parseStart(alarm.getStartTime());
+            if (starts[i] == null) {
+                clusterOf[i] = clusters++;
+                continue;
+            }
+            ends[i] = starts[i].plus(parseDuration(alarm.getDuration()));
+            byComponentAndLayer.computeIfAbsent(alarm.getComponentName() + "|" + alarm.getLayer(),
+                    k -> new ArrayList<>()).add(i);
+        }
+
+        // Sweep each component and layer in start order, extending a cluster while the next alarm overlaps it
+        for (List<Integer> group : byComponentAndLayer.values()) {
+            group.sort(Comparator.comparing((Integer i) -> starts[i]).thenComparingInt(i -> i));
+            LocalDateTime clusterEnd = null;
+            int size = 0;
+            for (int i : group) {
+                boolean joins = clusterEnd != null && !starts[i].isAfter(clusterEnd.plus(slack))
+                        && (maxAlarms < 0 || size < maxAlarms);
+                if (joins) {
+                    size++;
+                    clusterEnd = ends[i].isAfter(clusterEnd) ? ends[i] : clusterEnd;
+                } else {
+                    clusters++;
+                    size = 1;
+                    clusterEnd = ends[i];
+                }
+                clusterOf[i] = clusters - 1;
+            }
+        }
+
+        Map<Integer, List<T>> result = new LinkedHashMap<>();
+        for (int i = 0; i < alarms.size(); i++) {
+            result.computeIfAbsent(clusterOf[i], k -> new ArrayList<>()).add(alarms.get(i));
+        }
+        return new ArrayList<>(result.values());
+    }
+
+    static LocalDateTime parseStart(String startTime) {
+        if (startTime == null) {
+            return null;
+        }
+        for (DateTimeFormatter format : START_FORMATS) {
+            try {
+                return LocalDateTime.parse(startTime.trim(), format);
+            } catch (DateTimeParseException e) {
+                // Try the next format
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads durations such as "10 mins", "1 day 2 hrs 5 mins" or "02:15:00"; zero if there is none
+     */
+    static Duration parseDuration(String duration) {
+        if (duration == null) {
+            return Duration.ZERO;
+        }
+        Matcher clock = CLOCK.matcher(duration);
+        if (clock.find()) {
+            return Duration.ofHours(Long.parseLong(clock.group(1))).plusMinutes(Long.parseLong(clock.group(2)))
+                    .plusSeconds(clock.group(3) != null ? Long.parseLong(clock.group(3)) : 0);
+        }
+        Duration total = Duration.ZERO;
+        Matcher part = DURATION_PART.matcher(duration);
+        while (part.find()) {
+            long amount = Long.parseLong(part.group(1));
+            total = total.plus(switch (Character.toLowerCase(part.group(2).charAt(0))) {
+                case 'd' -> Duration.ofDays(amount);
+                case 'h' -> Duration.ofHours(amount);
+                case 'm' -> Duration.ofMinutes(amount);
+                default -> Duration.ofSeconds(amount);
+            });
+        }
+        return total;
+    }
+}
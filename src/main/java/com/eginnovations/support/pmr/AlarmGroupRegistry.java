@@ -0,0 +1,261 @@
+package com.eginnovations.support.pmr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Alarm groups collected and analyzed in earlier runs, kept in a local JSON file
+ * ({@code alarm.analysis.registry.file}), so that an alarm still open on the next run is not analyzed again
+ * and, where its analysis is at hand, not collected again either.
+ * <p>
+ * A group is identified by its grouping key and the start time of its representative alarm (see
+ * {@link #groupId}), so the same alarm gets the same ID, and zip entry name, on every run. Its fingerprint
+ * covers the representative alarm without duration and repeat count, which grow while an alarm stays open:
+ * a different fingerprint means the alarm changed (e.g. its priority) and is collected and analyzed again.
+ * Entries not seen for {@code alarm.analysis.registry.retention.days} are dropped.
+ */
+@Component
+public class AlarmGroupRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlarmGroupRegistry.class);
+
+    /** Alarm fields left out of the fingerprint */
+    private static final List<String> VOLATILE_FIELDS = List.of("duration", "repeatCount");
+
+    @Autowired
+    private Environment env;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectMapper canonicalMapper = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+    private volatile Map<String, Entry> entries;
+    private volatile boolean dirty;
+
+    /**
+     * Stable ID of an alarm group, a name-based UUID so it still reads like the random IDs used before
+     */
+    static String groupId(String key, String startTime) {
+        return UUID.nameUUIDFromBytes((key + "|" + startTime).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Hash of the representative alarm (an AlarmHistoryRecord or its JSON) without duration and repeat count
+     */
+    String fingerprint(Object representativeAlert) {
+        Map<String, Object> alert = canonicalMapper.convertValue(representativeAlert, new TypeReference<TreeMap<String, Object>>() {
+        });
+        VOLATILE_FIELDS.forEach(alert::remove);
+        try {
+            return sha256(canonicalMapper.writeValueAsString(alert));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not fingerprint alarm " + alert, e);
+        }
+    }
+
+    /**
+     * Whether an analysis of the group on its own, with the same fingerprint, is stored; being collected
+     * before is not enough, nor being analyzed as part of a group of correlated alarms
+     */
+    boolean hasAnalysis(String groupId, String fingerprint) {
+        Entry entry = getEntries().get(groupId);
+        return entry != null && entry.getAnalysis() != null && entry.getFingerprint().equals(fingerprint);
+    }
+
+    void recordCollected(String groupId, String fingerprint) {
+        Entry entry = getEntries().compute(groupId, (id, previous) ->
+                previous != null && previous.getFingerprint().equals(fingerprint) ? previous : new Entry(fingerprint));
+        entry.setLastSeen(System.currentTimeMillis());
+        dirty = true;
+    }
+
+    /**
+     * The stored analysis of a single alarm group or, with several IDs, of a group of correlated alarms;
+     * null if there is none for exactly these fingerprints
+     */
+    Entry findAnalysis(List<String> groupIds, List<String> fingerprints) {
+        String[] key = key(groupIds, fingerprints);
+        if (key == null) {
+            return null;
+        }
+        Entry entry = getEntries().get(key[0]);
+        if (entry == null || entry.getAnalysis() == null || !entry.getFingerprint().equals(key[1])) {
+            return null;
+        }
+        entry.setLastSeen(System.currentTimeMillis());
+        dirty = true;
+        return entry;
+    }
+
+    void recordAnalysis(List<String> groupIds, List<String> fingerprints, String analysis) {
+        String[] key = key(groupIds, fingerprints);
+        if (key == null) {
+            return;
+        }
+        Entry entry = new Entry(key[1]);
+        entry.setAnalysis(analysis);
+        entry.setAnalyzedAt(System.currentTimeMillis());
+        entry.setLastSeen(entry.getAnalyzedAt());
+        getEntries().put(key[0], entry);
+        dirty = true;
+    }
+
+    /**
+     * Writes the registry file if anything changed since it was read
+     */
+    synchronized void save() {
+        if (!dirty || entries == null) {
+            return;
+        }
+        File file = getFile();
+        try {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(file, new TreeMap<>(entries));
+            dirty = false;
+            logger.info("Saved {} alarm group(s) to {}", entries.size(), file);
+        } catch (IOException e) {
+            logger.error("Could not save the alarm group registry to {}", file, e);
+        }
+    }
+
+    boolean isEnabled() {
+        return Boolean.parseBoolean(env.getProperty("alarm.analysis.registry.enabled", "true"));
+    }
+
+    private Map<String, Entry> getEntries() {
+        Map<String, Entry> loaded = entries;
+        if (loaded == null) {
+            synchronized (this) {
+                loaded = entries;
+                if (loaded == null) {
+                    loaded = load();
+                    entries = loaded;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private Map<String, Entry> load() {
+        Map<String, Entry> loaded = new ConcurrentHashMap<>();
+        File file = getFile();
+        if (!file.exists()) {
+            return loaded;
+        }
+        try {
+            loaded.putAll(objectMapper.readValue(file, new TypeReference<Map<String, Entry>>() {
+            }));
+        } catch (IOException e) {
+            logger.warn("Could not read the alarm group registry {}, starting a new one: {}", file, e.getMessage());
+            return loaded;
+        }
+        long retentionDays = Long.parseLong(env.getProperty("alarm.analysis.registry.retention.days", "30"));
+        long oldest = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays);
+        int before = loaded.size();
+        loaded.values().removeIf(entry -> retentionDays >= 0 && entry.getLastSeen() < oldest);
+        dirty = loaded.size() < before;
+        logger.info("Loaded {} alarm group(s) from {}, dropped {} older than {} days", loaded.size(), file,
+                before - loaded.size(), retentionDays);
+        return loaded;
+    }
+
+    private File getFile() {
+        return new File(env.getProperty("alarm.analysis.registry.file", "alarm_analysis_registry.json"));
+    }
+
+    /**
+     * Registry ID and fingerprint of one group, or of a set of correlated groups in any order
+     */
+    private String[] key(List<String> groupIds, List<String> fingerprints) {
+        if (groupIds.isEmpty() || groupIds.stream().anyMatch(Objects::isNull) || fingerprints.stream().anyMatch(Objects::isNull)) {
+            return null;
+        }
+        if (groupIds.size() == 1) {
+            return new String[] {groupIds.get(0), fingerprints.get(0)};
+        }
+        Map<String, String> sorted = new TreeMap<>();
+        for (int i = 0; i < groupIds.size(); i++) {
+            sorted.put(groupIds.get(i), fingerprints.get(i));
+        }
+        String ids = String.join(",", sorted.keySet());
+        return new String[] {"cluster-" + UUID.nameUUIDFromBytes(ids.getBytes(StandardCharsets.UTF_8)),
+                sha256(String.join(",", sorted.values()))};
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * What is known about one alarm group, or one set of correlated groups
+     */
+    public static class Entry {
+        private String fingerprint;
+        private long lastSeen;
+        private long analyzedAt;
+        private String analysis; // report HTML of the analysis, null if only collected
+
+        public Entry() {
+        }
+
+        Entry(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public void setFingerprint(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        public long getLastSeen() {
+            return lastSeen;
+        }
+
+        public void setLastSeen(long lastSeen) {
+            this.lastSeen = lastSeen;
+        }
+
+        public long getAnalyzedAt() {
+            return analyzedAt;
+        }
+
+        public void setAnalyzedAt(long analyzedAt) {
+            this.analyzedAt = analyzedAt;
+        }
+
+        public String getAnalysis() {
+            return analysis;
+        }
+
+        public void setAnalysis(String analysis) {
+            this.analysis = analysis;
+        }
+    }
+}
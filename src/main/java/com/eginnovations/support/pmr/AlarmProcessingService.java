@@ -15,7 +15,6 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.Set;
-import java.util.UUID;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -67,6 +66,8 @@ public class AlarmProcessingService {
 	InventoryService inventoryService;
 	@Autowired
 	Environment environment;
+	@Autowired
+	AlarmGroupRegistry alarmGroupRegistry;
 	
 	private MetricsRepository metricsRepository = new MetricsRepository();
 	private GenericApiRepository genericApiRepository = new GenericApiRepository();
@@ -90,7 +91,10 @@ public class AlarmProcessingService {
 
 	/**
 	 * Analyzes grouped alarms by fetching historical data, diagnosis data, and measure graphs.
-	 * Saves the collected data into JSON files named by groupId.
+	 * Saves the collected data into JSON files named by groupId, which is derived from the group key and the
+	 * start time of its representative alarm. With prepare.json.alarm.analysis.skip.unchanged, a group whose unchanged
+	 * representative alarm was analyzed on this machine before (see {@link AlarmGroupRegistry}) is written with the
+	 * alarm only, without fetching its data again.
 	 * 
 	 * @param groupedAlarms Map of grouped alarms
 	 * @param genericApiRepository Repository to fetch generic API data
@@ -112,15 +116,18 @@ public class AlarmProcessingService {
 			
 			int c=0;
 			int total = groupedAlarms.size();
+			int unchanged = 0;
+			boolean skipUnchanged = alarmGroupRegistry.isEnabled()
+					&& Boolean.parseBoolean(environment.getProperty("prepare.json.alarm.analysis.skip.unchanged", "false"));
 
 			for (Map.Entry<String, List<AlarmHistoryRecord>> entry : groupedAlarms.entrySet()) {
 				c++;
 				System.out.println("Processing alarm group "+c+"/"+total+": "+entry.getKey()+" with "+entry.getValue().size()+" alarms");
-				String groupId = UUID.randomUUID().toString();
 				List<AlarmHistoryRecord> records = entry.getValue();
 				if (records.isEmpty()) continue;
 				
 				AlarmHistoryRecord firstRecord = records.get(0);
+				String groupId = AlarmGroupRegistry.groupId(entry.getKey(), firstRecord.getStartTime());
 				logger.info("Processing alarm group: {} | ID: {} | Total Alarms {}", entry.getKey(), groupId, records.size());
 				firstRecord.setRepeatCount(records.size()); // Set repeat count in the representative alarm record
 				
@@ -130,6 +137,18 @@ public class AlarmProcessingService {
 					serializedData.put("groupId", groupId);
 					serializedData.put("key", entry.getKey());
 					serializedData.put("representativeAlert", firstRecord);
+					String fingerprint = alarmGroupRegistry.isEnabled() ? alarmGroupRegistry.fingerprint(firstRecord) : null;
+					serializedData.put("fingerprint", fingerprint);
+					
+					if (skipUnchanged && alarmGroupRegistry.hasAnalysis(groupId, fingerprint)) {
+						// Still open since an earlier run: only duration and repeat count moved on, the report reuses that run's analysis
+						logger.info("Alarm group {} is unchanged since an earlier run, not collecting its data again", groupId);
+						serializedData.put("unchanged", true);
+						writeAlarmGroup(zos, objectMapper, entry.getKey(), groupId, serializedData);
+						alarmGroupRegistry.recordCollected(groupId, fingerprint);
+						unchanged++;
+						continue;
+					}
 					
 					// 1. Get Historical Data
 					HistoricalDataRequestBody histReq = new HistoricalDataRequestBody();
@@ -212,22 +231,37 @@ public class AlarmProcessingService {
 					}
 	
 					// Serialize to file
-					String jsonOutput = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(serializedData);
-					String zipEntryName = entry.getKey()+"."+groupId + ".json";
-					logger.info("Creating zip entry for group {} with name {}", groupId, zipEntryName);
-					zipEntryName = normalize(zipEntryName);
-					ZipEntry zipEntry = new ZipEntry(zipEntryName);
-					zos.putNextEntry(zipEntry);
-					zos.write(jsonOutput.getBytes(StandardCharsets.UTF_8));
-					zos.closeEntry();
-					logger.info("Saved data for group {} to zip entry {}.json", groupId, groupId);
+					writeAlarmGroup(zos, objectMapper, entry.getKey(), groupId, serializedData);
+					if (fingerprint != null) {
+						alarmGroupRegistry.recordCollected(groupId, fingerprint);
+					}
 				} catch (Exception e) {
 					logger.error("Error processing alarm group {}", groupId, e);
 				}
 			}
+			if (unchanged > 0) {
+				System.out.println("Alarm groups unchanged since an earlier run (data not collected again): " + unchanged);
+			}
 		} catch (IOException e) {
 			logger.error("Error writing zip file", e);
 		}
+		alarmGroupRegistry.save();
+	}
+	
+	/**
+	 * Writes the collected data of an alarm group as a zip entry named after its key and groupId
+	 */
+	private void writeAlarmGroup(ZipOutputStream zos, ObjectMapper objectMapper, String key, String groupId,
+			Map<String, Object> serializedData) throws IOException {
+		String jsonOutput = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(serializedData);
+		String zipEntryName = key+"."+groupId + ".json";
+		logger.info("Creating zip entry for group {} with name {}", groupId, zipEntryName);
+		zipEntryName = normalize(zipEntryName);
+		ZipEntry zipEntry = new ZipEntry(zipEntryName);
+		zos.putNextEntry(zipEntry);
+		zos.write(jsonOutput.getBytes(StandardCharsets.UTF_8));
+		zos.closeEntry();
+		logger.info("Saved data for group {} to zip entry {}.json", groupId, groupId);
 	}
 
 	private String normalize(String text) {
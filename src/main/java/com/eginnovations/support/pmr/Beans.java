@@ -2,6 +2,8 @@ package com.eginnovations.support.pmr;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
 
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -15,4 +17,20 @@ public class Beans {
 		return objectMapper;
 	}
 
+	/**
+	 * LLM backend selected with llm.backend: ollama (default) or openai for an OpenAI-compatible server
+	 */
+	@Bean
+	@Primary
+	LlmClient llmClient(Environment env, OllamaService ollamaService, OpenAiCompatibleService openAiCompatibleService) {
+		String backend = env.getProperty("llm.backend", "ollama").trim();
+		if ("openai".equalsIgnoreCase(backend)) {
+			return openAiCompatibleService;
+		}
+		if (!"ollama".equalsIgnoreCase(backend)) {
+			throw new IllegalArgumentException("Unknown llm.backend '" + backend + "', expected ollama or openai");
+		}
+		return ollamaService;
+	}
+
 }
@@ -0,0 +1,136 @@
+package com.eginnovations.support.pmr;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.eginnovations.support.pmr.model.HistoricalDataRoot;
+import com.eginnovations.support.pmr.model.KPIComplianceResult;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Groups the KPIs of one zip whose payloads are identical (same test, measure, unit, data values and
+ * diagnosis content, e.g. a measure that is all zeros on dozens of agents) so that only the first of each
+ * group is analyzed. The other members read their raw payloads through it and, once the zip is done, get
+ * its verdict with a "shared verdict" marker. If the first KPI could not be analyzed, its group is left
+ * to be analyzed KPI by KPI.
+ */
+class DuplicateKpiCollapser {
+
+    private final ObjectMapper canonicalMapper = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+    private final Map<String, List<KPIComplianceResult>> groups = new ConcurrentHashMap<>();
+
+    /**
+     * Records a parsed KPI
+     *
+     * @return true if it is the first of its group and has to be analyzed
+     */
+    boolean register(KPIComplianceResult result, HistoricalDataRoot.HistoricalDataContent data) {
+        List<KPIComplianceResult> group = groups.computeIfAbsent(payloadHash(result, data), k -> new ArrayList<>());
+        synchronized (group) {
+            group.add(result);
+            if (group.size() == 1) {
+                return true;
+            }
+            // Keep one copy of the payloads per group, wherever the representative keeps its own
+            KPIComplianceResult representative = group.get(0);
+            result.detachPayloads(representative::getRawData, representative::getDiagnosisData);
+            return false;
+        }
+    }
+
+    /**
+     * Members of the groups whose first KPI has no verdict, e.g. because its analysis threw; call once all
+     * KPIs are analyzed. These get no verdict from {@link #fanOut()}.
+     */
+    List<KPIComplianceResult> getUnanalyzedMembers() {
+        List<KPIComplianceResult> unanalyzed = new ArrayList<>();
+        for (List<KPIComplianceResult> group : groups.values()) {
+            if (group.size() > 1 && group.get(0).getComplianceStatus() == null) {
+                unanalyzed.addAll(group.subList(1, group.size()));
+            }
+        }
+        return unanalyzed;
+    }
+
+    /**
+     * Copies the verdict of each group's analyzed KPI onto the other members; call once all KPIs are analyzed
+     *
+     * @return the KPIs that were not analyzed themselves
+     */
+    List<KPIComplianceResult> fanOut() {
+        List<KPIComplianceResult> collapsed = new ArrayList<>();
+        for (List<KPIComplianceResult> group : groups.values()) {
+            KPIComplianceResult representative = group.get(0);
+            if (group.size() < 2 || representative.getComplianceStatus() == null) {
+                continue;
+            }
+            String marker = "Shared verdict (" + group.size() + " components)";
+            representative.setSharedVerdict(marker);
+            for (KPIComplianceResult member : group.subList(1, group.size())) {
+                member.setComplianceStatus(representative.getComplianceStatus());
+                member.setCompliant(representative.isCompliant());
+                member.setAiAnalysis(representative.getAiAnalysis());
+                member.setConfidence(representative.getConfidence());
+                member.setReasons(representative.getReasons());
+                member.setKeyDataPoints(representative.getKeyDataPoints());
+                member.setDecidedBy(representative.getDecidedBy());
+                member.setReusedFrom(representative.getReusedFrom());
+                member.setSharedVerdict(marker);
+                member.setThresholdCheck(representative.getThresholdCheck());
+                member.setAnomalyScreen(representative.getAnomalyScreen());
+                collapsed.add(member);
+            }
+        }
+        return collapsed;
+    }
+
+    int getGroupCount() {
+        return groups.size();
+    }
+
+    private String payloadHash(KPIComplianceResult result, HistoricalDataRoot.HistoricalDataContent data) {
+        StringBuilder payload = new StringBuilder();
+        payload.append(normalize(result.getTest())).append('\n');
+        payload.append(normalize(result.getMeasure())).append('\n');
+        payload.append(normalize(result.getMeasurementUnit())).append('\n');
+        if (data.getData() != null) {
+            // Values only: the timestamps differ from agent to agent
+            data.getData().entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(series -> {
+                payload.append(series.getKey()).append(':');
+                if (series.getValue() instanceof List<?> points) {
+                    for (Object point : points) {
+                        Object value = point instanceof Map<?, ?> map ? map.get("value") : point;
+                        payload.append(String.valueOf(value).trim()).append(',');
+                    }
+                }
+                payload.append('\n');
+            });
+        }
+        try {
+            payload.append(canonicalMapper.writeValueAsString(data.getDiagnosisData()));
+        } catch (JsonProcessingException e) {
+            // Never collapse KPIs whose diagnosis cannot be compared
+            payload.append(System.identityHashCode(result));
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(payload.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+}
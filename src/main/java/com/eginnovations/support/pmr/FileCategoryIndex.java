@@ -0,0 +1,57 @@
+package com.eginnovations.support.pmr;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Suffix lookup over the {@code fileCategoryMapping.properties} keys ({@code <test>_<measure>.json} file
+ * names, mapped to a category such as "capacity"). A zip entry matches a key its file name ends with.
+ * <p>
+ * Instead of calling {@code endsWith} for every key, the file name's suffix of each distinct key length is
+ * looked up in a hash map, so a lookup costs a handful of probes whatever the number of keys. When several
+ * keys match, the longest one wins.
+ */
+class FileCategoryIndex {
+
+    private final Map<String, String> categories = new HashMap<>();
+    private final int[] suffixLengths;
+
+    FileCategoryIndex(Properties mapping) {
+        for (String key : mapping.stringPropertyNames()) {
+            String suffix = key.trim();
+            if (!suffix.isEmpty()) {
+                categories.put(suffix, mapping.getProperty(key).trim());
+            }
+        }
+        // Longest first, so the most specific key wins
+        suffixLengths = categories.keySet().stream().mapToInt(String::length).distinct()
+                .map(length -> -length).sorted().map(length -> -length).toArray();
+    }
+
+    /**
+     * Category of a zip entry, or null if its file name ends with none of the mapped names
+     */
+    String categoryOf(String entryName) {
+        String fileName = entryName.substring(entryName.lastIndexOf('/') + 1);
+        for (int length : suffixLengths) {
+            if (length <= fileName.length()) {
+                String category = categories.get(fileName.substring(fileName.length() - length));
+                if (category != null) {
+                    return category;
+                }
+            }
+        }
+        return null;
+    }
+
+    int size() {
+        return categories.size();
+    }
+
+    @Override
+    public String toString() {
+        return categories.size() + " mapping(s), suffix lengths " + Arrays.toString(suffixLengths);
+    }
+}
@@ -0,0 +1,142 @@
+package com.eginnovations.support.pmr;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.eginnovations.support.pmr.model.KPIComplianceResult;
+
+/**
+ * Takes the raw payloads (historical data and diagnosis JSON) off analyzed KPI results of one zip, so
+ * that the results kept for the report do not grow with the payload size. The report never reads them.
+ * <ul>
+ * <li>keep: payloads stay on the results as before</li>
+ * <li>spill: payloads are appended to a temporary file and read back by offset on demand</li>
+ * <li>drop: payloads are discarded</li>
+ * </ul>
+ * The spill file is deleted once the results referring to it are garbage collected, or at the latest
+ * when the JVM exits.
+ */
+class KpiPayloadStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(KpiPayloadStore.class);
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    enum Mode { KEEP, SPILL, DROP }
+
+    private final Mode mode;
+    private final FileChannel channel;
+    private final AtomicInteger released = new AtomicInteger();
+    private long end;
+
+    private KpiPayloadStore(Mode mode, FileChannel channel) {
+        this.mode = mode;
+        this.channel = channel;
+    }
+
+    /**
+     * A store for one zip; spilling falls back to dropping if no temporary file can be created
+     */
+    static KpiPayloadStore open(String mode) {
+        Mode parsed;
+        try {
+            parsed = Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown raw payload mode '{}', keeping payloads", mode);
+            parsed = Mode.KEEP;
+        }
+        if (parsed != Mode.SPILL) {
+            return new KpiPayloadStore(parsed, null);
+        }
+        try {
+            Path file = Files.createTempFile("pm-payloads-", ".tmp");
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+            KpiPayloadStore store = new KpiPayloadStore(Mode.SPILL, channel);
+            CLEANER.register(store, () -> {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // Deleted on exit instead
+                }
+            });
+            return store;
+        } catch (IOException e) {
+            logger.warn("Could not create a payload spill file, dropping payloads instead: {}", e.getMessage());
+            return new KpiPayloadStore(Mode.DROP, null);
+        }
+    }
+
+    /**
+     * Takes the payloads off an analyzed result; results that already read theirs from elsewhere are left alone
+     */
+    void release(KPIComplianceResult result) {
+        if (mode == Mode.KEEP || result.isPayloadDetached()) {
+            return;
+        }
+        if (mode == Mode.SPILL) {
+            try {
+                result.detachPayloads(spill(result.getRawData()), spill(result.getDiagnosisData()));
+                released.incrementAndGet();
+                return;
+            } catch (IOException e) {
+                logger.warn("Could not spill the payloads of {}, dropping them: {}", result.getEntryName(), e.getMessage());
+            }
+        }
+        result.detachPayloads(null, null);
+        released.incrementAndGet();
+    }
+
+    void logStats() {
+        if (mode == Mode.SPILL) {
+            logger.info("Spilled the payloads of {} KPI(s) to disk ({} KB)", released.get(), end / 1024);
+        } else if (mode == Mode.DROP) {
+            logger.info("Dropped the payloads of {} analyzed KPI(s)", released.get());
+        }
+    }
+
+    private Supplier<String> spill(String payload) throws IOException {
+        if (payload == null) {
+            return null;
+        }
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        long offset;
+        synchronized (this) {
+            offset = end;
+            end += bytes.length;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+        // Only offset and length are captured, never the payload itself
+        int length = bytes.length;
+        return () -> read(offset, length);
+    }
+
+    private String read(long offset, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("Spill file ends before offset " + (offset + length));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new String(buffer.array(), StandardCharsets.UTF_8);
+    }
+}
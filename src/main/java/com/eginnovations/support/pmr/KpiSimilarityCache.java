@@ -0,0 +1,400 @@
+package com.eginnovations.support.pmr;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import com.eginnovations.support.pmr.model.HistoricalDataRoot;
+import com.eginnovations.support.pmr.model.KPIComplianceResult;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Reuses the verdict of a previously analyzed KPI for a near-identical one, e.g. the same measure with the
+ * same flat series on hundreds of agents.
+ * <p>
+ * Each KPI is reduced to a text fingerprint (test, measure, unit, summary statistics of its series and the
+ * shape of its diagnosis data, but not the component name), which is embedded through a local embeddings
+ * endpoint. Analyzed KPIs are indexed per test and measure; a new KPI whose cosine similarity to an indexed one
+ * reaches {@code prepare.report.preventive.maintenance.similarity.cache.threshold} takes over its verdict.
+ * The search within a test and measure is exact: those partitions stay small enough (near-duplicates with
+ * the same verdict are not indexed twice) that a linear scan costs less than an approximate index.
+ * <p>
+ * With {@code ...similarity.cache.audit=true} every KPI is still analyzed in full and the would-be reuses are
+ * compared with the full verdicts, giving the precision and recall of reuse for the run's corpus.
+ */
+@Component
+public class KpiSimilarityCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(KpiSimilarityCache.class);
+
+    private static final String DEFAULT_EMBEDDING_URL = "http://localhost:11434/api/embed";
+    private static final String DEFAULT_EMBEDDING_MODEL = "nomic-embed-text";
+
+    @Autowired
+    private Environment env;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, List<Entry>> partitions = new ConcurrentHashMap<>();
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+    private final AtomicLong embeddingFailures = new AtomicLong();
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong auditWouldReuse = new AtomicLong();
+    private final AtomicLong auditAgreed = new AtomicLong();
+    private final AtomicLong auditReusable = new AtomicLong();
+
+    public boolean isEnabled() {
+        return Boolean.parseBoolean(env.getProperty("prepare.report.preventive.maintenance.similarity.cache.enabled", "false"));
+    }
+
+    /**
+     * Embeds the KPI's fingerprint. Returns null when the cache is disabled or the embedding failed,
+     * in which case the KPI is simply analyzed.
+     */
+    public Lookup lookup(KPIComplianceResult result, HistoricalDataRoot.HistoricalDataContent data) {
+        if (!isEnabled()) {
+            return null;
+        }
+        lookups.incrementAndGet();
+        String fingerprint = fingerprint(result, data);
+        try {
+            return new Lookup(partitionKey(result), embed(fingerprint));
+        } catch (Exception e) {
+            if (embeddingFailures.incrementAndGet() == 1) {
+                logger.warn("Could not embed KPI fingerprint, analyzing without the similarity cache: {}", e.getMessage());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Logs how many verdicts were reused and, in audit mode, the precision and recall of reuse
+     */
+    public void logStats() {
+        if (!isEnabled() || lookups.get() == 0) {
+            return;
+        }
+        String summary = String.format("Similarity cache: %d of %d KPI(s) reused a prior verdict, %d indexed, %d embedding failure(s)",
+                reuses.get(), lookups.get(), indexed.get(), embeddingFailures.get());
+        if (isAudit()) {
+            summary += String.format("; audit at threshold %.3f: %d would-be reuse(s), precision %s, recall %s",
+                    getThreshold(), auditWouldReuse.get(), ratio(auditAgreed.get(), auditWouldReuse.get()),
+                    ratio(auditAgreed.get(), auditReusable.get()));
+        }
+        logger.info(summary);
+        System.out.println(summary);
+    }
+
+    /**
+     * Normalized description of a KPI that is independent of the component it was collected on
+     */
+    static String fingerprint(KPIComplianceResult result, HistoricalDataRoot.HistoricalDataContent data) {
+        StringBuilder fingerprint = new StringBuilder();
+        fingerprint.append("test: ").append(result.getTest()).append('\n');
+        fingerprint.append("measure: ").append(result.getMeasure()).append('\n');
+        fingerprint.append("component type: ").append(result.getComponentType()).append('\n');
+        fingerprint.append("unit: ").append(result.getMeasurementUnit()).append('\n');
+        if (data.getData() != null) {
+            new TreeMap<>(data.getData()).forEach((name, series) ->
+                    fingerprint.append("series ").append(name).append(": ").append(describeSeries(series)).append('\n'));
+        }
+        fingerprint.append("diagnosis: ").append(describeShape(data.getDiagnosisData())).append('\n');
+        if (result.getThresholdCheck() != null) {
+            fingerprint.append("threshold check: ").append(result.getThresholdCheck()).append('\n');
+        }
+        return fingerprint.toString();
+    }
+
+    private static String describeSeries(Object series) {
+        if (!(series instanceof List<?> points)) {
+            return "none";
+        }
+        int count = 0;
+        int nonNumeric = 0;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        double sum = 0;
+        double sumOfSquares = 0;
+        double last = Double.NaN;
+        Set<Double> distinct = new HashSet<>();
+        List<Double> values = new ArrayList<>();
+        for (Object point : points) {
+            Object value = point instanceof Map<?, ?> map ? map.get("value") : point;
+            double number;
+            try {
+                number = Double.parseDouble(String.valueOf(value).trim());
+            } catch (NumberFormatException e) {
+                nonNumeric++;
+                continue;
+            }
+            count++;
+            min = Math.min(min, number);
+            max = Math.max(max, number);
+            sum += number;
+            sumOfSquares += number * number;
+            last = number;
+            if (distinct.size() <= 10) {
+                distinct.add(number);
+            }
+            values.add(number);
+        }
+        if (count == 0) {
+            return points.size() + " points, none numeric";
+        }
+        double mean = sum / count;
+        double stddev = Math.sqrt(Math.max(0, sumOfSquares / count - mean * mean));
+        return String.format(Locale.ROOT, "%d points, %d non-numeric, min %s, max %s, mean %s, stddev %s, last %s, %s distinct, %s",
+                count, nonNumeric, round(min), round(max), round(mean), round(stddev), round(last),
+                distinct.size() > 10 ? "over 10" : String.valueOf(distinct.size()), trend(values));
+    }
+
+    private static String trend(List<Double> values) {
+        int third = values.size() / 3;
+        if (third == 0) {
+            return "flat";
+        }
+        double head = values.subList(0, third).stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        double tail = values.subList(values.size() - third, values.size()).stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        double scale = Math.max(Math.abs(head), Math.abs(tail));
+        if (scale == 0 || Math.abs(tail - head) / scale < 0.1) {
+            return "flat";
+        }
+        return tail > head ? "rising" : "falling";
+    }
+
+    private static String describeShape(Object diagnosis) {
+        if (diagnosis == null) {
+            return "none";
+        }
+        if (diagnosis instanceof List<?> rows) {
+            Set<String> columns = new TreeSet<>();
+            rows.stream().filter(Map.class::isInstance).limit(5).forEach(row -> ((Map<?, ?>) row).keySet()
+                    .forEach(key -> columns.add(String.valueOf(key))));
+            return rows.size() + " rows, columns " + columns;
+        }
+        if (diagnosis instanceof Map<?, ?> map) {
+            Set<String> keys = new TreeSet<>();
+            map.keySet().forEach(key -> keys.add(String.valueOf(key)));
+            return "object with keys " + keys;
+        }
+        return "present";
+    }
+
+    // Three significant digits, so noise in the last digits does not change the fingerprint
+    private static String round(double value) {
+        return String.format(Locale.ROOT, "%.3g", value);
+    }
+
+    private static String partitionKey(KPIComplianceResult result) {
+        return (result.getTest() + "|" + result.getMeasure()).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Unit-length embedding of the text from an Ollama ({@code /api/embed}) or OpenAI-compatible
+     * ({@code /v1/embeddings}) endpoint
+     */
+    private float[] embed(String text) throws IOException {
+        String url = env.getProperty("llm.embedding.url", DEFAULT_EMBEDDING_URL);
+        ObjectNode requestJson = objectMapper.createObjectNode();
+        requestJson.put("model", env.getProperty("llm.embedding.model", DEFAULT_EMBEDDING_MODEL));
+        requestJson.put("input", text);
+        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
+            HttpPost request = new HttpPost(url);
+            request.setEntity(new StringEntity(objectMapper.writeValueAsString(requestJson), StandardCharsets.UTF_8));
+            request.setHeader("Content-Type", "application/json");
+            JsonNode response = httpClient.execute(request, httpResponse -> {
+                if (httpResponse.getCode() != 200) {
+                    throw new IOException("embeddings endpoint returned status " + httpResponse.getCode());
+                }
+                return objectMapper.readTree(httpResponse.getEntity().getContent());
+            });
+            JsonNode vector = response.has("embeddings") ? response.path("embeddings").path(0)
+                    : response.has("data") ? response.path("data").path(0).path("embedding")
+                    : response.path("embedding");
+            if (!vector.isArray() || vector.isEmpty()) {
+                throw new IOException("no embedding in the response of " + url);
+            }
+            float[] embedding = new float[vector.size()];
+            double norm = 0;
+            for (int i = 0; i < embedding.length; i++) {
+                embedding[i] = (float) vector.get(i).asDouble();
+                norm += embedding[i] * embedding[i];
+            }
+            norm = Math.sqrt(norm);
+            for (int i = 0; i < embedding.length && norm > 0; i++) {
+                embedding[i] /= norm;
+            }
+            return embedding;
+        }
+    }
+
+    private boolean isAudit() {
+        return Boolean.parseBoolean(env.getProperty("prepare.report.preventive.maintenance.similarity.cache.audit", "false"));
+    }
+
+    private double getThreshold() {
+        return Double.parseDouble(env.getProperty("prepare.report.preventive.maintenance.similarity.cache.threshold", "0.97"));
+    }
+
+    private static String ratio(long part, long whole) {
+        return whole == 0 ? "n/a" : String.format(Locale.ROOT, "%.3f", (double) part / whole);
+    }
+
+    private static double similarity(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return -1;
+        }
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+
+    /**
+     * The embedded fingerprint of one KPI, used first to look for a reusable verdict and then to
+     * index the KPI's own verdict
+     */
+    public class Lookup {
+        private final String partition;
+        private final float[] embedding;
+        private Entry wouldReuse;
+
+        private Lookup(String partition, float[] embedding) {
+            this.partition = partition;
+            this.embedding = embedding;
+        }
+
+        /**
+         * Copies the verdict of the most similar indexed KPI onto the result if it is similar enough
+         *
+         * @return false if the KPI has to be analyzed (always in audit mode)
+         */
+        public boolean reuse(KPIComplianceResult result) {
+            Entry best = null;
+            double bestSimilarity = -1;
+            for (Entry entry : partitions.getOrDefault(partition, List.of())) {
+                double similarity = similarity(embedding, entry.embedding);
+                if (similarity > bestSimilarity) {
+                    best = entry;
+                    bestSimilarity = similarity;
+                }
+            }
+            if (best == null || bestSimilarity < getThreshold()) {
+                return false;
+            }
+            if (isAudit()) {
+                wouldReuse = best;
+                return false;
+            }
+            result.setComplianceStatus(best.status);
+            result.setCompliant(best.compliant);
+            result.setAiAnalysis(best.aiAnalysis);
+            result.setConfidence(best.confidence);
+            result.setReasons(best.reasons);
+            result.setKeyDataPoints(best.keyDataPoints);
+            result.setDecidedBy(best.decidedBy);
+            result.setReusedFrom(String.format(Locale.ROOT, "%s (%s, similarity %.3f)",
+                    best.componentName, best.entryName, bestSimilarity));
+            reuses.incrementAndGet();
+            logger.info("Reusing verdict {} of {} for {} (similarity {})", best.status, best.entryName,
+                    result.getEntryName(), String.format(Locale.ROOT, "%.3f", bestSimilarity));
+            return true;
+        }
+
+        /**
+         * Indexes the verdict of a KPI that was analyzed, unless an indexed KPI with the same verdict is
+         * already similar enough to stand for it
+         *
+         * @param failed Whether the AI server answered the analysis with an error
+         */
+        public void store(KPIComplianceResult result, boolean failed) {
+            String status = result.getComplianceStatus();
+            if (failed || status == null || result.getAiAnalysis() == null) {
+                // Unanswered or failed analyses must not spread
+                return;
+            }
+            List<Entry> entries = partitions.computeIfAbsent(partition, k -> new CopyOnWriteArrayList<>());
+            Entry nearest = null;
+            double nearestSimilarity = -1;
+            for (Entry entry : entries) {
+                double similarity = similarity(embedding, entry.embedding);
+                if (similarity > nearestSimilarity) {
+                    nearest = entry;
+                    nearestSimilarity = similarity;
+                }
+            }
+            if (isAudit() && nearest != null) {
+                if (nearest.status.equals(status)) {
+                    auditReusable.incrementAndGet();
+                }
+                if (wouldReuse != null) {
+                    auditWouldReuse.incrementAndGet();
+                    if (wouldReuse.status.equals(status)) {
+                        auditAgreed.incrementAndGet();
+                    } else {
+                        logger.info("Audit: reuse of {} ({}) for {} would have been wrong ({})", wouldReuse.entryName,
+                                wouldReuse.status, result.getEntryName(), status);
+                    }
+                }
+            }
+            if (nearest != null && nearestSimilarity >= getThreshold() && nearest.status.equals(status)) {
+                return;
+            }
+            entries.add(new Entry(embedding, result));
+            indexed.incrementAndGet();
+        }
+    }
+
+    /**
+     * An analyzed KPI: its embedding and the verdict fields that are copied on reuse
+     */
+    private static class Entry {
+        private final float[] embedding;
+        private final String entryName;
+        private final String componentName;
+        private final String status;
+        private final boolean compliant;
+        private final String aiAnalysis;
+        private final Double confidence;
+        private final List<String> reasons;
+        private final List<String> keyDataPoints;
+        private final String decidedBy;
+
+        Entry(float[] embedding, KPIComplianceResult result) {
+            this.embedding = embedding;
+            this.entryName = result.getEntryName();
+            this.componentName = result.getComponentName();
+            this.status = result.getComplianceStatus();
+            this.compliant = result.isCompliant();
+            this.aiAnalysis = result.getAiAnalysis();
+            this.confidence = result.getConfidence();
+            this.reasons = result.getReasons();
+            this.keyDataPoints = result.getKeyDataPoints();
+            this.decidedBy = result.getDecidedBy();
+        }
+    }
+}
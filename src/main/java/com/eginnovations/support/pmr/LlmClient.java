@@ -0,0 +1,46 @@
+package com.eginnovations.support.pmr;
+
+import com.eginnovations.support.pmr.model.KPIVerdict;
+import com.eginnovations.support.pmr.model.LlmRequest;
+import com.eginnovations.support.pmr.model.LlmResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * LLM backend used for KPI and alarm analysis, selected with {@code llm.backend}:
+ * {@link OllamaService} or {@link OpenAiCompatibleService}.
+ * <p>
+ * The generate methods never throw: failures are returned as an error response whose text is an
+ * HTML message suitable for the report.
+ */
+public interface LlmClient {
+
+    /**
+     * Sends one request and returns the generated text, or an error response
+     */
+    LlmResponse generate(LlmRequest request);
+
+    /**
+     * Generates JSON constrained by the given schema. Generation stops as soon as the top-level
+     * JSON value is complete.
+     *
+     * @return The JSON text, or null if the backend failed
+     */
+    String generateJson(LlmRequest request, JsonNode schema);
+
+    /**
+     * Asks for a typed KPI verdict (status, confidence, reasons, key data points, markdown explanation)
+     *
+     * @return The verdict, or null if the backend failed or the answer could not be parsed
+     */
+    KPIVerdict generateVerdict(LlmRequest request);
+
+    /**
+     * Prepares the backend before the first real request of a run, e.g. by loading the models
+     */
+    void warmUp();
+
+    /**
+     * Logs the run statistics of the backend; called once at the end of a run
+     */
+    void logRunStats();
+}
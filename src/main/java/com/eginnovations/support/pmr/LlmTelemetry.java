@@ -0,0 +1,160 @@
+package com.eginnovations.support.pmr;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.eginnovations.support.pmr.model.LlmCallStats;
+
+/**
+ * Collects the per-call statistics Ollama reports (prompt and generation token counts and durations,
+ * model load time) and aggregates them per model, endpoint and API for the end-of-run report.
+ * <p>
+ * The split between prompt evaluation and generation time shows whether a run is bound by prompt
+ * size or by output length; model reloads show whether {@code ollama.keep_alive} is too short.
+ */
+@Component
+public class LlmTelemetry {
+
+    private static final Logger logger = LoggerFactory.getLogger(LlmTelemetry.class);
+
+    // A model that is already loaded reports a load time of a few milliseconds
+    private static final long RELOAD_THRESHOLD_NANOS = 1_000_000_000L;
+
+    private final Aggregate total = new Aggregate();
+    private final Map<String, Aggregate> aggregates = new ConcurrentSkipListMap<>();
+    private final Map<String, LlmCallStats> unclaimedCalls = new ConcurrentHashMap<>();
+
+    /**
+     * Records a completed call. Tagged calls are kept until {@link #takeCall(String)} claims them or
+     * {@link #discardUnclaimedCalls()} drops them.
+     */
+    public void record(LlmCallStats stats) {
+        total.add(stats);
+        aggregates.computeIfAbsent(stats.getModel() + " @ " + stats.getEndpoint() + " via " + stats.getApi(),
+                k -> new Aggregate()).add(stats);
+        if (stats.getTag() != null) {
+            unclaimedCalls.put(stats.getTag(), stats);
+        }
+        if (stats.isReported()) {
+            logger.info("LLM call [{}] {} @ {}: prompt {} tokens in {} ms, generation {} tokens in {} ms ({} tokens/s), load {} ms",
+                    stats.getTag(), stats.getModel(), stats.getEndpoint(), stats.getPromptEvalCount(),
+                    millis(stats.getPromptEvalDurationNanos()), stats.getEvalCount(), millis(stats.getEvalDurationNanos()),
+                    String.format("%.1f", tokensPerSecond(stats.getEvalCount(), stats.getEvalDurationNanos())),
+                    millis(stats.getLoadDurationNanos()));
+        }
+    }
+
+    /**
+     * Removes and returns the statistics of the last call with this tag, or null
+     */
+    public LlmCallStats takeCall(String tag) {
+        return tag == null ? null : unclaimedCalls.remove(tag);
+    }
+
+    /**
+     * Drops the statistics of tagged calls no response log claimed, e.g. triage calls and hedged requests
+     * that lost; called at the end of each zip so they do not pile up over a run
+     */
+    public void discardUnclaimedCalls() {
+        int discarded = unclaimedCalls.size();
+        unclaimedCalls.clear();
+        if (discarded > 0) {
+            logger.debug("Discarded the statistics of {} unclaimed LLM call(s)", discarded);
+        }
+    }
+
+    /**
+     * Header lines for a response log: the statistics of the tagged call and the run totals so far
+     */
+    public String formatLogHeader(String tag) {
+        StringBuilder header = new StringBuilder();
+        LlmCallStats call = takeCall(tag);
+        if (call != null) {
+            header.append("Model: ").append(call.getModel()).append(" @ ").append(call.getEndpoint())
+                  .append(" via ").append(call.getApi()).append("\n");
+            if (call.isReported()) {
+                header.append(String.format("Call: prompt %d tokens in %d ms, generation %d tokens in %d ms (%.1f tokens/s), load %d ms, total %d ms%n",
+                        call.getPromptEvalCount(), millis(call.getPromptEvalDurationNanos()), call.getEvalCount(),
+                        millis(call.getEvalDurationNanos()), tokensPerSecond(call.getEvalCount(), call.getEvalDurationNanos()),
+                        millis(call.getLoadDurationNanos()), millis(call.getTotalDurationNanos())));
+            } else {
+                header.append("Call: ").append(call.getWallMillis()).append(" ms, no server statistics (stopped early)\n");
+            }
+        }
+        header.append("Run so far: ").append(total.describe()).append("\n");
+        return header.toString();
+    }
+
+    /**
+     * Logs the aggregates per model, endpoint and API; called once at the end of a run
+     */
+    public void logSummary() {
+        if (total.calls == 0) {
+            return;
+        }
+        aggregates.forEach((key, aggregate) -> print("LLM " + key + ": " + aggregate.describe()));
+        print("LLM total: " + total.describe());
+    }
+
+    private void print(String summary) {
+        logger.info(summary);
+        System.out.println(summary);
+    }
+
+    private static long millis(long nanos) {
+        return nanos < 0 ? -1 : nanos / 1_000_000;
+    }
+
+    private static double tokensPerSecond(long tokens, long nanos) {
+        return nanos <= 0 ? 0 : tokens * 1_000_000_000.0 / nanos;
+    }
+
+    /**
+     * Sums over a set of calls; only calls with server statistics contribute to the token and time sums
+     */
+    private static class Aggregate {
+        private long calls;
+        private long reported;
+        private long promptTokens;
+        private long promptNanos;
+        private long evalTokens;
+        private long evalNanos;
+        private long loadNanos;
+        private long reloads;
+
+        synchronized void add(LlmCallStats stats) {
+            calls++;
+            if (!stats.isReported()) {
+                return;
+            }
+            reported++;
+            promptTokens += Math.max(0, stats.getPromptEvalCount());
+            promptNanos += Math.max(0, stats.getPromptEvalDurationNanos());
+            evalTokens += Math.max(0, stats.getEvalCount());
+            evalNanos += Math.max(0, stats.getEvalDurationNanos());
+            loadNanos += Math.max(0, stats.getLoadDurationNanos());
+            if (stats.getLoadDurationNanos() > RELOAD_THRESHOLD_NANOS) {
+                reloads++;
+            }
+        }
+
+        synchronized String describe() {
+            if (reported == 0) {
+                return calls + " call(s), no server statistics";
+            }
+            double promptShare = promptNanos + evalNanos == 0 ? 0 : promptNanos * 100.0 / (promptNanos + evalNanos);
+            return String.format(
+                    "%d call(s) (%d with statistics); prompt avg %.0f tokens, %.0f ms (%.1f tokens/s); "
+                    + "generation avg %.0f tokens, %.0f ms (%.1f tokens/s); prompt share of compute %.0f%%; "
+                    + "model load %d ms total, %d reload(s)",
+                    calls, reported, (double) promptTokens / reported, promptNanos / 1e6 / reported,
+                    tokensPerSecond(promptTokens, promptNanos), (double) evalTokens / reported, evalNanos / 1e6 / reported,
+                    tokensPerSecond(evalTokens, evalNanos), promptShare, loadNanos / 1_000_000, reloads);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.eginnovations.support.pmr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import com.eginnovations.support.pmr.model.MeasureHelp;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * All measure help of the {@code eghelp/<test>.json} resources, loaded once on first use and looked up
+ * by test and measure name ignoring case.
+ * <p>
+ * The build validates the help files and compiles them into the single {@link #BUNDLE} resource
+ * (MeasureHelpBundleCompiler, under {@code src/build/java}), which is read in one pass. Without it, e.g.
+ * when running from an IDE that skips the build step, there is no measure help; run
+ * {@code mvn process-classes} once.
+ */
+@Component
+public class MeasureHelpIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(MeasureHelpIndex.class);
+
+    /** Classpath location of the compiled help, keyed by normalized test and measure name */
+    static final String BUNDLE = "eghelp-bundle.json";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private volatile Map<String, Map<String, MeasureHelp>> tests;
+
+    /**
+     * Help for a measure, or null if there is none
+     */
+    public MeasureHelp find(String test, String measure) {
+        if (test == null || measure == null) {
+            return null;
+        }
+        Map<String, MeasureHelp> measures = getTests().get(testKey(test));
+        return measures == null ? null : measures.get(measureKey(measure));
+    }
+
+    /**
+     * Whether there is a help file for the test
+     */
+    public boolean hasTest(String test) {
+        return test != null && getTests().containsKey(testKey(test));
+    }
+
+    private Map<String, Map<String, MeasureHelp>> getTests() {
+        if (tests == null) {
+            synchronized (this) {
+                if (tests == null) {
+                    tests = load();
+                }
+            }
+        }
+        return tests;
+    }
+
+    private Map<String, Map<String, MeasureHelp>> load() {
+        long start = System.currentTimeMillis();
+        Map<String, Map<String, MeasureHelp>> loaded;
+        ClassPathResource bundle = new ClassPathResource(BUNDLE);
+        if (!bundle.exists()) {
+            logger.error("{} not found, no measure help is available; build with mvn process-classes", BUNDLE);
+            return Collections.emptyMap();
+        }
+        try (InputStream in = bundle.getInputStream()) {
+            loaded = objectMapper.readValue(in, new TypeReference<Map<String, Map<String, MeasureHelp>>>() {});
+        } catch (IOException e) {
+            logger.error("Could not read {}, no measure help is available", BUNDLE, e);
+            return Collections.emptyMap();
+        }
+        logger.info("Loaded help for {} measure(s) of {} test(s) in {} ms",
+                loaded.values().stream().mapToInt(Map::size).sum(), loaded.size(), System.currentTimeMillis() - start);
+        return loaded;
+    }
+
+    // Help files are named after the test without its slashes
+    static String testKey(String test) {
+        return test.replace("/", "").trim().toLowerCase(Locale.ROOT);
+    }
+
+    static String measureKey(String measure) {
+        return measure.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,320 @@
+package com.eginnovations.support.pmr;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pool of Ollama endpoints used by {@link OllamaService}.
+ * <p>
+ * Endpoints come from {@code ollama.api.urls} (comma separated, optionally {@code url|maxConcurrent}),
+ * falling back to the single {@code ollama.api.url}. Requests are routed to the healthy endpoint with
+ * the fewest outstanding requests, never exceeding its concurrency limit. Endpoints that fail repeatedly
+ * are ejected and re-admitted once the periodic health check ({@code GET /api/tags}) succeeds again.
+ */
+@Component
+public class OllamaEndpointPool implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(OllamaEndpointPool.class);
+
+    private static final String DEFAULT_OLLAMA_URL = "http://localhost:11434/api/generate";
+    // How often a waiting acquire looks at its cancel condition when no slot is freed
+    private static final long CANCEL_CHECK_MILLIS = 50;
+
+    @Autowired
+    private Environment env;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition capacityAvailable = lock.newCondition();
+    private volatile List<Endpoint> endpoints;
+    private ScheduledExecutorService healthChecker;
+    private int ejectAfterFailures;
+
+    /**
+     * Blocks until an endpoint has a free slot and reserves it. Callers must {@link #release} it.
+     */
+    public Endpoint acquire() throws InterruptedException {
+        return acquire(null, () -> false);
+    }
+
+    /**
+     * Like {@link #acquire()}, but prefers any endpoint other than {@code avoid} that has a free slot;
+     * used for hedged requests, which should not queue behind the request they duplicate. Gives up once
+     * {@code cancelled} holds.
+     *
+     * @return null if cancelled; no slot is reserved then
+     */
+    public Endpoint acquire(Endpoint avoid, BooleanSupplier cancelled) throws InterruptedException {
+        List<Endpoint> all = getEndpoints();
+        lock.lock();
+        try {
+            while (true) {
+                if (cancelled.getAsBoolean()) {
+                    return null;
+                }
+                Endpoint chosen = avoid == null ? null : pickLeastOutstanding(all, true, avoid);
+                if (chosen == null) {
+                    chosen = pickLeastOutstanding(all, true, null);
+                }
+                if (chosen == null && all.stream().noneMatch(Endpoint::isHealthy)) {
+                    // Every endpoint is ejected: keep serving rather than stall the run
+                    chosen = pickLeastOutstanding(all, false, null);
+                }
+                if (chosen != null) {
+                    chosen.outstanding.incrementAndGet();
+                    return chosen;
+                }
+                capacityAvailable.await(CANCEL_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a slot obtained from {@link #acquire()} and records the outcome of the request
+     */
+    public void release(Endpoint endpoint, boolean success, long latencyMillis, long responseChars) {
+        if (success) {
+            endpoint.completed.incrementAndGet();
+            endpoint.totalLatencyMillis.addAndGet(latencyMillis);
+            endpoint.responseChars.addAndGet(responseChars);
+            endpoint.consecutiveFailures.set(0);
+        } else {
+            endpoint.failed.incrementAndGet();
+            if (endpoint.consecutiveFailures.incrementAndGet() >= ejectAfterFailures && endpoint.healthy) {
+                eject(endpoint, endpoint.consecutiveFailures.get() + " consecutive failures");
+            }
+        }
+        freeSlot(endpoint);
+    }
+
+    /**
+     * Releases a slot whose request was cancelled, without counting it as completed or failed
+     */
+    public void cancel(Endpoint endpoint) {
+        freeSlot(endpoint);
+    }
+
+    private void freeSlot(Endpoint endpoint) {
+        lock.lock();
+        try {
+            endpoint.outstanding.decrementAndGet();
+            capacityAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Logs per-endpoint request counts, latency and throughput since the pool was created
+     */
+    public void logEndpointStats() {
+        if (endpoints == null) {
+            return;
+        }
+        for (Endpoint endpoint : endpoints) {
+            long completed = endpoint.completed.get();
+            long elapsedMillis = Math.max(1, System.currentTimeMillis() - endpoint.createdAt);
+            double avgLatency = completed == 0 ? 0 : (double) endpoint.totalLatencyMillis.get() / completed;
+            double perMinute = completed * 60000.0 / elapsedMillis;
+            double charsPerSecond = endpoint.totalLatencyMillis.get() == 0 ? 0
+                    : endpoint.responseChars.get() * 1000.0 / endpoint.totalLatencyMillis.get();
+            String summary = String.format(
+                    "Ollama endpoint %s: %d completed, %d failed, %d ejection(s), avg latency %.0f ms, %.2f req/min, %.1f chars/s%s",
+                    endpoint.url, completed, endpoint.failed.get(), endpoint.ejections.get(), avgLatency,
+                    perMinute, charsPerSecond, endpoint.healthy ? "" : " [EJECTED]");
+            logger.info(summary);
+            System.out.println(summary);
+        }
+    }
+
+    /**
+     * All configured endpoints, created on first use
+     */
+    public List<Endpoint> getEndpoints() {
+        if (endpoints == null) {
+            synchronized (this) {
+                if (endpoints == null) {
+                    endpoints = Collections.unmodifiableList(loadEndpoints());
+                    startHealthChecks();
+                }
+            }
+        }
+        return endpoints;
+    }
+
+    private Endpoint pickLeastOutstanding(List<Endpoint> all, boolean healthyOnly, Endpoint exclude) {
+        Endpoint chosen = null;
+        for (Endpoint endpoint : all) {
+            if (endpoint == exclude || (healthyOnly && !endpoint.healthy)
+                    || endpoint.outstanding.get() >= endpoint.maxConcurrent) {
+                continue;
+            }
+            if (chosen == null || endpoint.outstanding.get() < chosen.outstanding.get()) {
+                chosen = endpoint;
+            }
+        }
+        return chosen;
+    }
+
+    private List<Endpoint> loadEndpoints() {
+        // -1 means unlimited: only the caller's thread pool bounds the requests sent to the endpoint
+        int defaultMaxConcurrent = Integer.parseInt(env.getProperty("ollama.api.max.concurrent.per.endpoint", "-1"));
+        ejectAfterFailures = Integer.parseInt(env.getProperty("ollama.endpoint.eject.after.failures", "3"));
+
+        String urls = env.getProperty("ollama.api.urls");
+        if (urls == null || urls.isBlank()) {
+            urls = env.getProperty("ollama.api.url", DEFAULT_OLLAMA_URL);
+        }
+
+        List<Endpoint> loaded = new ArrayList<>();
+        long totalCapacity = 0;
+        for (String spec : urls.split(",")) {
+            spec = spec.trim();
+            if (spec.isEmpty()) {
+                continue;
+            }
+            int maxConcurrent = defaultMaxConcurrent;
+            int separator = spec.lastIndexOf('|');
+            if (separator > 0) {
+                maxConcurrent = Integer.parseInt(spec.substring(separator + 1).trim());
+                spec = spec.substring(0, separator).trim();
+            }
+            Endpoint endpoint = new Endpoint(spec, maxConcurrent);
+            loaded.add(endpoint);
+            totalCapacity += endpoint.maxConcurrent;
+            logger.info("Registered Ollama endpoint {} (max concurrent requests: {})", spec,
+                    maxConcurrent == -1 ? "unlimited" : maxConcurrent);
+        }
+        if (totalCapacity < Integer.MAX_VALUE) {
+            logger.info("Ollama endpoint pool: {} endpoint(s), total capacity {} concurrent request(s). "
+                    + "Size prepare.report.preventive.maintenance.thread.pool.size accordingly.", loaded.size(), totalCapacity);
+        }
+        return loaded;
+    }
+
+    private void startHealthChecks() {
+        long intervalSeconds = Long.parseLong(env.getProperty("ollama.endpoint.health.check.interval.seconds", "30"));
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ollamaHealthCheck");
+            t.setDaemon(true);
+            return t;
+        });
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private void checkHealth() {
+        RequestConfig config = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofSeconds(5))
+                .setResponseTimeout(Timeout.ofSeconds(10))
+                .build();
+        for (Endpoint endpoint : endpoints) {
+            boolean up;
+            try (CloseableHttpClient httpClient = HttpClients.custom().setDefaultRequestConfig(config).build()) {
+                HttpGet request = new HttpGet(endpoint.getBaseUrl() + "/api/tags");
+                up = httpClient.execute(request, response -> response.getCode() == 200);
+            } catch (Exception e) {
+                logger.debug("Health check failed for {}: {}", endpoint.url, e.getMessage());
+                up = false;
+            }
+            if (up && !endpoint.healthy) {
+                endpoint.consecutiveFailures.set(0);
+                endpoint.healthy = true;
+                logger.info("Ollama endpoint {} passed health check, re-admitted", endpoint.url);
+                lock.lock();
+                try {
+                    capacityAvailable.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            } else if (!up && endpoint.healthy) {
+                eject(endpoint, "health check failed");
+            }
+        }
+    }
+
+    private void eject(Endpoint endpoint, String reason) {
+        endpoint.healthy = false;
+        endpoint.ejections.incrementAndGet();
+        logger.warn("Ejecting Ollama endpoint {}: {}", endpoint.url, reason);
+    }
+
+    @Override
+    public void destroy() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+    }
+
+    /**
+     * A single Ollama server with its concurrency limit, health state and counters
+     */
+    public static class Endpoint {
+        private final String url;
+        private final String baseUrl;
+        private final int maxConcurrent;
+        private final long createdAt = System.currentTimeMillis();
+        private volatile boolean healthy = true;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong ejections = new AtomicLong();
+        private final AtomicLong totalLatencyMillis = new AtomicLong();
+        private final AtomicLong responseChars = new AtomicLong();
+
+        Endpoint(String url, int maxConcurrent) {
+            this.url = url;
+            this.maxConcurrent = maxConcurrent == -1 ? Integer.MAX_VALUE : Math.max(1, maxConcurrent);
+            URI uri = URI.create(url);
+            this.baseUrl = uri.getScheme() + "://" + uri.getAuthority();
+        }
+
+        /**
+         * Full generate URL, e.g. http://host:11434/api/generate
+         */
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * Scheme, host and port, e.g. http://host:11434
+         */
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+    }
+}
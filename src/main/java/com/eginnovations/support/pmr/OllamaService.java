@@ -1,7 +1,15 @@
 package com.eginnovations.support.pmr;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
 
 import org.apache.hc.client5.http.classic.methods.HttpPost;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
@@ -14,27 +22,43 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 
+import com.eginnovations.support.pmr.model.LlmCallStats;
+import com.eginnovations.support.pmr.model.LlmRequest;
+import com.eginnovations.support.pmr.model.LlmResponse;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 /**
- * Service to interact with Ollama API for AI-powered analysis
+ * Service to interact with Ollama API for AI-powered analysis; the default {@link LlmClient}
  */
 @Service
-public class OllamaService {
+public class OllamaService extends AbstractLlmClient {
     
     private static final Logger logger = LoggerFactory.getLogger(OllamaService.class);
     
     @Autowired
     private Environment env;
     
-    private ObjectMapper objectMapper = new ObjectMapper();
+    @Autowired
+    private OllamaEndpointPool endpointPool;
+    
+    @Autowired
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+    
+    @Autowired
+    private LlmTelemetry telemetry;
+    
+    @Autowired
+    private RequestHedger requestHedger;
+    
+    private final AtomicBoolean warmedUp = new AtomicBoolean();
+    private final AtomicInteger contextSize = new AtomicInteger(); // largest num_ctx sent so far
     
-    // Default Ollama API endpoint
-    private static final String DEFAULT_OLLAMA_URL = "http://localhost:11434/api/generate";
     private static final String DEFAULT_MODEL = "llama2";
     private static final int DEFAULT_TIMEOUT = 60000; // 60 seconds
+    private static final int DEFAULT_OUTPUT_RESERVE = 1024; // context kept free for the answer when num_predict is unlimited
+    private static final int MESSAGE_OVERHEAD_TOKENS = 32; // chat template tokens around the messages
     
     /**
      * Generates a response from Ollama based on the given prompt
@@ -44,14 +68,119 @@ public class OllamaService {
      * @throws IOException If there's an error communicating with Ollama
      */
     public String generateResponse(String prompt) throws IOException {
-        String ollamaUrl = env.getProperty("ollama.api.url", DEFAULT_OLLAMA_URL);
-        String model = env.getProperty("ollama.model", DEFAULT_MODEL);
+        return generate(new LlmRequest(prompt)).getText();
+    }
+    
+    /**
+     * Loads the model (and the triage model, if any) on every endpoint before the first real request, so the
+     * first KPIs of a run do not pay the model load time. Runs once per process; disabled with
+     * {@code ollama.warmup.enabled=false}.
+     */
+    @Override
+    public void warmUp() {
+        if (!Boolean.parseBoolean(env.getProperty("ollama.enabled", "true"))
+                || !Boolean.parseBoolean(env.getProperty("ollama.warmup.enabled", "true"))
+                || !warmedUp.compareAndSet(false, true)) {
+            return;
+        }
+        List<String> models = new ArrayList<>();
+        models.add(env.getProperty("ollama.model", DEFAULT_MODEL));
+        String triageModel = env.getProperty("ollama.triage.model");
+        if (triageModel != null && !triageModel.isBlank()) {
+            models.add(triageModel.trim());
+        }
+        for (String model : models) {
+            for (OllamaEndpointPool.Endpoint endpoint : endpointPool.getEndpoints()) {
+                warmUp(model, endpoint);
+            }
+        }
+    }
+    
+    private void warmUp(String model, OllamaEndpointPool.Endpoint endpoint) {
+        long startTime = System.currentTimeMillis();
+        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
+            // A generate request without a prompt only loads the model
+            HttpPost request = new HttpPost(endpoint.getUrl());
+            ObjectNode requestJson = objectMapper.createObjectNode();
+            requestJson.put("model", model);
+            putKeepAlive(requestJson);
+            if (!"-1".equals(env.getProperty("ollama.num_ctx.max"))) {
+                // Load with the context size the first requests will ask for, or they reload the model
+                requestJson.putObject("options").put("num_ctx", contextSizeFor(0));
+            }
+            request.setEntity(new StringEntity(objectMapper.writeValueAsString(requestJson), StandardCharsets.UTF_8));
+            request.setHeader("Content-Type", "application/json");
+            JsonNode responseJson = httpClient.execute(request,
+                    response -> objectMapper.readTree(response.getEntity().getContent()));
+            logger.info("Warmed up model {} on {} in {} ms (load: {} ms)", model, endpoint.getBaseUrl(),
+                    System.currentTimeMillis() - startTime, responseJson.path("load_duration").asLong(0) / 1_000_000);
+        } catch (Exception e) {
+            logger.warn("Warm-up of model {} on {} failed: {}", model, endpoint.getBaseUrl(), e.getMessage());
+        }
+    }
+    
+    /**
+     * Sends a request to the least loaded Ollama endpoint. Never throws: failures are returned
+     * as an error response whose text is an HTML message suitable for the report.
+     * <p>
+     * Requests with a system part go to {@code /api/chat} as a system and a user message, so the
+     * server can reuse the cached prefill of the identical system message across requests.
+     * With {@code ollama.chat.api.enabled=false} both parts are sent as one {@code /api/generate} prompt.
+     */
+    @Override
+    public LlmResponse generate(LlmRequest llmRequest) {
+        String model = llmRequest.getModel() != null ? llmRequest.getModel() : env.getProperty("ollama.model", DEFAULT_MODEL);
         boolean enabled = Boolean.parseBoolean(env.getProperty("ollama.enabled", "true"));
         
         if (!enabled) {
             logger.warn("Ollama service is disabled in configuration");
-            return getFallbackResponse();
+            return errorResponse(getFallbackResponse());
+        }
+        
+        if (requestHedger.isEnabled()) {
+            return requestHedger.execute(attempt -> send(llmRequest, model, attempt));
+        }
+        return send(llmRequest, model, null);
+    }
+    
+    /**
+     * Sends one request to an endpoint from the pool. When the request is a hedging attempt, it is always
+     * streamed so that its first token can be reported, and it goes to another endpoint than the request
+     * it duplicates if one has room.
+     */
+    private LlmResponse send(LlmRequest llmRequest, String model, RequestHedger.Attempt attempt) {
+        OllamaEndpointPool.Endpoint endpoint;
+        // A hedge that lost while still queued gives up its place instead of taking capacity
+        BooleanSupplier cancelled = attempt == null ? () -> false : attempt::isCancelled;
+        try {
+            if (!concurrencyLimiter.acquire(cancelled)) {
+                attempt.done(false);
+                return errorResponse(getErrorResponse("Cancelled: a hedged copy of the request answered first"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return errorResponse(getErrorResponse("Interrupted while waiting for an LLM concurrency permit"));
+        }
+        try {
+            endpoint = endpointPool.acquire(attempt == null ? null : (OllamaEndpointPool.Endpoint) attempt.getAvoidEndpoint(),
+                    cancelled);
+            if (endpoint == null) {
+                concurrencyLimiter.cancel();
+                attempt.done(false);
+                return errorResponse(getErrorResponse("Cancelled: a hedged copy of the request answered first"));
+            }
+        } catch (InterruptedException e) {
+            concurrencyLimiter.release(false, 0, 0);
+            Thread.currentThread().interrupt();
+            return errorResponse(getErrorResponse("Interrupted while waiting for a free Ollama endpoint"));
         }
+        boolean chat = llmRequest.getSystem() != null
+                && Boolean.parseBoolean(env.getProperty("ollama.chat.api.enabled", "true"));
+        String ollamaUrl = chat ? endpoint.getBaseUrl() + "/api/chat" : endpoint.getUrl();
+        long startTime = System.currentTimeMillis();
+        boolean success = false;
+        long responseChars = 0;
+        boolean streaming = llmRequest.getStopCondition() != null || attempt != null;
         
         logger.info("Sending prompt to Ollama (model: {}, url: {})", model, ollamaUrl);
         
@@ -61,15 +190,34 @@ public class OllamaService {
             // Build request JSON
             ObjectNode requestJson = objectMapper.createObjectNode();
             requestJson.put("model", model);
-            requestJson.put("prompt", prompt);
-            requestJson.put("stream", false);
+            ObjectNode options = objectMapper.createObjectNode();
+            String prompt = fitToContext(llmRequest, options);
+            if (chat) {
+                ArrayNode messages = requestJson.putArray("messages");
+                messages.addObject().put("role", "system").put("content", llmRequest.getSystem());
+                messages.addObject().put("role", "user").put("content", prompt);
+            } else {
+                requestJson.put("prompt", llmRequest.getSystem() == null ? prompt : llmRequest.getSystem() + "\n\n" + prompt);
+            }
+            requestJson.put("stream", streaming);
+            putKeepAlive(requestJson);
+            if (llmRequest.getFormat() != null) {
+                requestJson.set("format", llmRequest.getFormat());
+            }
             
             // Add optional parameters from configuration
             if (env.containsProperty("ollama.temperature")) {
-                requestJson.put("temperature", Double.parseDouble(env.getProperty("ollama.temperature")));
+                options.put("temperature", Double.parseDouble(env.getProperty("ollama.temperature")));
+            }
+            if (llmRequest.getMaxOutputTokens() > 0) {
+                options.put("num_predict", llmRequest.getMaxOutputTokens());
             }
-            if (env.containsProperty("ollama.max_tokens")) {
-                requestJson.put("max_tokens", Integer.parseInt(env.getProperty("ollama.max_tokens")));
+            if (!llmRequest.getStop().isEmpty()) {
+                ArrayNode stop = options.putArray("stop");
+                llmRequest.getStop().forEach(stop::add);
+            }
+            if (!options.isEmpty()) {
+                requestJson.set("options", options);
             }
             
             String requestBody = objectMapper.writeValueAsString(requestJson);
@@ -78,55 +226,192 @@ public class OllamaService {
             
             logger.debug("Ollama request: {}", requestBody);
             
+            if (attempt != null) {
+                attempt.sent(endpoint, request);
+            }
             try (CloseableHttpResponse response = httpClient.execute(request)) {
                 int statusCode = response.getCode();
-                String responseBody = new String(
-                    response.getEntity().getContent().readAllBytes(), 
-                    StandardCharsets.UTF_8
-                );
                 
-                logger.debug("Ollama response status: {}, body length: {}", statusCode, responseBody.length());
+                if (statusCode != 200) {
+                    String responseBody = new String(
+                        response.getEntity().getContent().readAllBytes(), 
+                        StandardCharsets.UTF_8
+                    );
+                    logger.error("Ollama API error: status={}, body={}", statusCode, responseBody);
+                    return errorResponse(getErrorResponse("Ollama API returned status " + statusCode));
+                }
                 
-                if (statusCode == 200) {
-                    JsonNode responseJson = objectMapper.readTree(responseBody);
-                    String generatedText = responseJson.get("response").asText();
-                    logger.info("Successfully received response from Ollama (length: {} chars)", generatedText.length());
-                    return generatedText;
+                LlmResponse llmResponse = new LlmResponse();
+                LlmCallStats stats = new LlmCallStats();
+                stats.setTag(llmRequest.getTag());
+                stats.setModel(model);
+                stats.setEndpoint(endpoint.getBaseUrl());
+                stats.setApi(chat ? "/api/chat" : "/api/generate");
+                llmResponse.setStats(stats);
+                if (streaming) {
+                    readStreamingResponse(request, response, llmRequest.getStopCondition(), chat, llmResponse, attempt);
                 } else {
-                    logger.error("Ollama API error: status={}, body={}", statusCode, responseBody);
-                    return getErrorResponse("Ollama API returned status " + statusCode);
+                    String responseBody = new String(
+                        response.getEntity().getContent().readAllBytes(), 
+                        StandardCharsets.UTF_8
+                    );
+                    logger.debug("Ollama response status: {}, body length: {}", statusCode, responseBody.length());
+                    JsonNode responseJson = objectMapper.readTree(responseBody);
+                    llmResponse.setText(responseText(responseJson, chat));
+                    readServerStats(responseJson, stats);
                 }
+                stats.setWallMillis(System.currentTimeMillis() - startTime);
+                if (attempt != null && attempt.isCancelled()) {
+                    return errorResponse(getErrorResponse("Cancelled: a hedged copy of the request answered first"));
+                }
+                telemetry.record(stats);
+                logger.info("Successfully received response from Ollama (length: {} chars{})",
+                        llmResponse.getText().length(), llmResponse.isStoppedEarly() ? ", stopped early" : "");
+                success = true;
+                responseChars = llmResponse.getText().length();
+                return llmResponse;
             }
             
         } catch (IOException e) {
+            if (attempt != null && attempt.isCancelled()) {
+                logger.debug("Hedged request to {} cancelled", ollamaUrl);
+                return errorResponse(getErrorResponse("Cancelled: a hedged copy of the request answered first"));
+            }
             logger.error("IO error communicating with Ollama "+ e);
-            return getErrorResponse("Connection error: " + e.getMessage());
+            return errorResponse(getErrorResponse("Connection error: " + e.getMessage()));
         } catch (Exception e) {
             logger.error("Unexpected error getting Ollama response", e);
-            return getErrorResponse("Unexpected error: " + e.getMessage());
+            return errorResponse(getErrorResponse("Unexpected error: " + e.getMessage()));
+        } finally {
+            long latency = System.currentTimeMillis() - startTime;
+            if (attempt != null) {
+                attempt.done(success);
+            }
+            if (attempt != null && attempt.isCancelled()) {
+                // A cancelled request says nothing about the endpoint's health or speed
+                endpointPool.cancel(endpoint);
+                concurrencyLimiter.cancel();
+            } else {
+                endpointPool.release(endpoint, success, latency, responseChars);
+                concurrencyLimiter.release(success, latency, responseChars);
+            }
+        }
+    }
+    
+    /**
+     * Reads Ollama's newline-delimited JSON stream, aborting the request once the stop condition (if any) holds
+     */
+    private void readStreamingResponse(HttpPost request, CloseableHttpResponse response,
+                                       Predicate<CharSequence> stopCondition, boolean chat,
+                                       LlmResponse llmResponse, RequestHedger.Attempt attempt) throws IOException {
+        StringBuilder text = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(response.getEntity().getContent(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode chunk = objectMapper.readTree(line);
+                if (chunk.has("error")) {
+                    throw new IOException("Ollama stream error: " + chunk.get("error").asText());
+                }
+                text.append(responseText(chunk, chat));
+                if (attempt != null && text.length() > 0) {
+                    attempt.firstToken();
+                }
+                if (chunk.path("done").asBoolean(false)) {
+                    readServerStats(chunk, llmResponse.getStats());
+                    break;
+                }
+                if (stopCondition != null && stopCondition.test(text)) {
+                    // Closing the connection makes Ollama stop generating
+                    llmResponse.setStoppedEarly(true);
+                    request.cancel();
+                    break;
+                }
+            }
+        }
+        llmResponse.setText(text.toString());
+    }
+    
+    private static String responseText(JsonNode json, boolean chat) {
+        return chat ? json.path("message").path("content").asText("") : json.path("response").asText("");
+    }
+    
+    /**
+     * Copies the token counts and durations Ollama reports on its final message
+     */
+    private static void readServerStats(JsonNode json, LlmCallStats stats) {
+        if (!json.has("total_duration")) {
+            return;
         }
+        stats.setPromptEvalCount(json.path("prompt_eval_count").asLong(0));
+        stats.setPromptEvalDurationNanos(json.path("prompt_eval_duration").asLong(0));
+        stats.setEvalCount(json.path("eval_count").asLong(0));
+        stats.setEvalDurationNanos(json.path("eval_duration").asLong(0));
+        stats.setLoadDurationNanos(json.path("load_duration").asLong(0));
+        stats.setTotalDurationNanos(json.path("total_duration").asLong());
     }
     
     /**
-     * Returns a fallback response when Ollama is unavailable
+     * Sizes the context window (num_ctx) for a request and returns its user prompt, trimmed in the middle
+     * if the estimated prompt would not fit within {@code ollama.num_ctx.max} together with the output budget.
+     * Trimming here keeps the instructions, whereas the server would silently drop the start of the prompt.
+     * <p>
+     * Ollama reloads the model whenever num_ctx changes, so sizes are powers of two and only ever grow
+     * during a run: a run settles on the size its largest prompt needs after at most a few reloads.
      */
-    private String getFallbackResponse() {
-        return "<div class='alert alert-info'>" +
-               "<strong>AI Analysis Unavailable</strong><br>" +
-               "The AI analysis service is currently unavailable. " +
-               "Please review the alarm details and interpretation guide above for manual analysis." +
-               "</div>";
+    private String fitToContext(LlmRequest llmRequest, ObjectNode options) {
+        int maxContext = Integer.parseInt(env.getProperty("ollama.num_ctx.max", "32768"));
+        String prompt = llmRequest.getPrompt();
+        if (maxContext == -1) {
+            // Context window left to the server's default
+            return prompt;
+        }
+        int reserve = llmRequest.getMaxOutputTokens() > 0 ? llmRequest.getMaxOutputTokens() : DEFAULT_OUTPUT_RESERVE;
+        int systemTokens = TokenEstimator.estimate(llmRequest.getSystem()) + MESSAGE_OVERHEAD_TOKENS;
+        int promptTokens = TokenEstimator.estimate(prompt);
+        int available = maxContext - reserve - systemTokens;
+        if (promptTokens > available) {
+            logger.warn("Prompt for {} is about {} tokens, more than the {} left in a {} token context; trimming it",
+                    llmRequest.getTag(), promptTokens, available, maxContext);
+            prompt = TokenEstimator.trimMiddle(prompt, Math.max(0, available));
+            promptTokens = TokenEstimator.estimate(prompt);
+        }
+        options.put("num_ctx", contextSizeFor(systemTokens + promptTokens + reserve));
+        return prompt;
+    }
+    
+    private int contextSizeFor(int tokens) {
+        int minContext = Integer.parseInt(env.getProperty("ollama.num_ctx.min", "4096"));
+        int maxContext = Integer.parseInt(env.getProperty("ollama.num_ctx.max", "32768"));
+        int size = Math.max(minContext, Integer.highestOneBit(Math.max(1, tokens - 1)) << 1);
+        return contextSize.accumulateAndGet(Math.min(size, maxContext), Math::max);
+    }
+    
+    private void putKeepAlive(ObjectNode requestJson) {
+        // How long the server keeps the model loaded after the request, e.g. "30m"; -1 keeps it loaded indefinitely
+        String keepAlive = env.getProperty("ollama.keep_alive");
+        if (keepAlive != null && !keepAlive.isBlank()) {
+            if (keepAlive.trim().matches("-?\\d+")) {
+                requestJson.put("keep_alive", Long.parseLong(keepAlive.trim()));
+            } else {
+                requestJson.put("keep_alive", keepAlive.trim());
+            }
+        }
     }
     
     /**
-     * Returns an error response
+     * Logs per-endpoint throughput, the adaptive concurrency history and the token/timing telemetry
+     * per model, endpoint and API; called once at the end of a run
      */
-    private String getErrorResponse(String error) {
-        return "<div class='alert alert-warning'>" +
-               "<strong>AI Analysis Error</strong><br>" +
-               error + "<br>" +
-               "Please review the alarm details and interpretation guide above for manual analysis." +
-               "</div>";
+    @Override
+    public void logRunStats() {
+        endpointPool.logEndpointStats();
+        concurrencyLimiter.logStats();
+        requestHedger.logStats();
+        telemetry.logSummary();
     }
     
     /**
@@ -0,0 +1,238 @@
+package com.eginnovations.support.pmr;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import com.eginnovations.support.pmr.model.LlmCallStats;
+import com.eginnovations.support.pmr.model.LlmRequest;
+import com.eginnovations.support.pmr.model.LlmResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * {@link LlmClient} for servers with an OpenAI-compatible {@code /v1/chat/completions} API, such as
+ * llama.cpp server or vLLM. These servers batch concurrent requests continuously, so more parallel
+ * requests (thread pool size or adaptive concurrency) give more aggregate throughput, also on CPU-only hosts.
+ * <p>
+ * A JSON schema goes in {@code response_format} and the output limit in {@code max_tokens}. Requests with a
+ * stop condition are streamed as server-sent events and cut off once it holds. Token counts come from
+ * {@code usage}; llama.cpp server also reports prompt and generation times in {@code timings}.
+ * The context window and the loaded model are managed by the server, so there is no num_ctx sizing,
+ * warm-up or request hedging as with {@link OllamaService}.
+ */
+@Service
+public class OpenAiCompatibleService extends AbstractLlmClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenAiCompatibleService.class);
+
+    private static final String DEFAULT_URL = "http://localhost:8080/v1/chat/completions";
+    private static final String API = "/v1/chat/completions";
+
+    @Autowired
+    private Environment env;
+
+    @Autowired
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    private LlmTelemetry telemetry;
+
+    @Override
+    public LlmResponse generate(LlmRequest llmRequest) {
+        if (!Boolean.parseBoolean(env.getProperty("ollama.enabled", "true"))) {
+            logger.warn("AI analysis is disabled in configuration");
+            return errorResponse(getFallbackResponse());
+        }
+        String model = getModel(llmRequest);
+        String url = env.getProperty("llm.openai.api.url", DEFAULT_URL);
+        try {
+            concurrencyLimiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return errorResponse(getErrorResponse("Interrupted while waiting for an LLM concurrency permit"));
+        }
+        long startTime = System.currentTimeMillis();
+        boolean success = false;
+        long responseChars = 0;
+        boolean streaming = llmRequest.getStopCondition() != null;
+
+        logger.info("Sending prompt to OpenAI-compatible server (model: {}, url: {})", model, url);
+
+        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
+            HttpPost request = new HttpPost(url);
+            String requestBody = objectMapper.writeValueAsString(buildRequestJson(llmRequest, model, streaming));
+            request.setEntity(new StringEntity(requestBody, StandardCharsets.UTF_8));
+            request.setHeader("Content-Type", "application/json");
+            String apiKey = env.getProperty("llm.openai.api.key");
+            if (apiKey != null && !apiKey.isBlank()) {
+                request.setHeader("Authorization", "Bearer " + apiKey.trim());
+            }
+
+            logger.debug("OpenAI-compatible request: {}", requestBody);
+
+            try (CloseableHttpResponse response = httpClient.execute(request)) {
+                int statusCode = response.getCode();
+                if (statusCode != 200) {
+                    String responseBody = new String(response.getEntity().getContent().readAllBytes(), StandardCharsets.UTF_8);
+                    logger.error("OpenAI-compatible API error: status={}, body={}", statusCode, responseBody);
+                    return errorResponse(getErrorResponse("LLM server returned status " + statusCode));
+                }
+
+                LlmResponse llmResponse = new LlmResponse();
+                LlmCallStats stats = new LlmCallStats();
+                stats.setTag(llmRequest.getTag());
+                stats.setModel(model);
+                stats.setEndpoint(url.endsWith(API) ? url.substring(0, url.length() - API.length()) : url);
+                stats.setApi(API);
+                llmResponse.setStats(stats);
+                if (streaming) {
+                    readStreamingResponse(request, response, llmRequest, llmResponse);
+                } else {
+                    JsonNode responseJson = objectMapper.readTree(response.getEntity().getContent());
+                    llmResponse.setText(responseJson.path("choices").path(0).path("message").path("content").asText(""));
+                    readServerStats(responseJson, stats);
+                }
+                stats.setWallMillis(System.currentTimeMillis() - startTime);
+                if (stats.getEvalCount() >= 0 && !stats.isReported()) {
+                    // Token counts without server timings (vLLM): the wall time is the best total there is
+                    stats.setTotalDurationNanos(stats.getWallMillis() * 1_000_000L);
+                }
+                telemetry.record(stats);
+                logger.info("Successfully received response from OpenAI-compatible server (length: {} chars{})",
+                        llmResponse.getText().length(), llmResponse.isStoppedEarly() ? ", stopped early" : "");
+                success = true;
+                responseChars = llmResponse.getText().length();
+                return llmResponse;
+            }
+        } catch (IOException e) {
+            logger.error("IO error communicating with OpenAI-compatible server " + e);
+            return errorResponse(getErrorResponse("Connection error: " + e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Unexpected error getting OpenAI-compatible response", e);
+            return errorResponse(getErrorResponse("Unexpected error: " + e.getMessage()));
+        } finally {
+            concurrencyLimiter.release(success, System.currentTimeMillis() - startTime, responseChars);
+        }
+    }
+
+    /**
+     * The server loads its model at startup, so there is nothing to warm up
+     */
+    @Override
+    public void warmUp() {
+    }
+
+    @Override
+    public void logRunStats() {
+        concurrencyLimiter.logStats();
+        telemetry.logSummary();
+    }
+
+    private String getModel(LlmRequest llmRequest) {
+        if (llmRequest.getModel() != null) {
+            return llmRequest.getModel();
+        }
+        String model = env.getProperty("llm.openai.model");
+        return model != null && !model.isBlank() ? model.trim() : env.getProperty("ollama.model", "default");
+    }
+
+    private ObjectNode buildRequestJson(LlmRequest llmRequest, String model, boolean streaming) {
+        ObjectNode requestJson = objectMapper.createObjectNode();
+        requestJson.put("model", model);
+        ArrayNode messages = requestJson.putArray("messages");
+        if (llmRequest.getSystem() != null) {
+            messages.addObject().put("role", "system").put("content", llmRequest.getSystem());
+        }
+        messages.addObject().put("role", "user").put("content", llmRequest.getPrompt());
+        requestJson.put("stream", streaming);
+        if (streaming) {
+            // Token counts arrive in a last chunk before [DONE]
+            requestJson.putObject("stream_options").put("include_usage", true);
+        }
+        if (llmRequest.getFormat() != null) {
+            ObjectNode jsonSchema = requestJson.putObject("response_format").put("type", "json_schema").putObject("json_schema");
+            jsonSchema.put("name", "response");
+            jsonSchema.set("schema", llmRequest.getFormat());
+        }
+        if (env.containsProperty("ollama.temperature")) {
+            requestJson.put("temperature", Double.parseDouble(env.getProperty("ollama.temperature")));
+        }
+        if (llmRequest.getMaxOutputTokens() > 0) {
+            requestJson.put("max_tokens", llmRequest.getMaxOutputTokens());
+        }
+        if (!llmRequest.getStop().isEmpty()) {
+            ArrayNode stop = requestJson.putArray("stop");
+            llmRequest.getStop().forEach(stop::add);
+        }
+        return requestJson;
+    }
+
+    /**
+     * Reads the server-sent event stream, aborting the request once the stop condition holds
+     */
+    private void readStreamingResponse(HttpPost request, CloseableHttpResponse response, LlmRequest llmRequest,
+                                       LlmResponse llmResponse) throws IOException {
+        StringBuilder text = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(response.getEntity().getContent(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith("data:")) {
+                    continue;
+                }
+                String data = line.substring(5).trim();
+                if ("[DONE]".equals(data)) {
+                    break;
+                }
+                JsonNode chunk = objectMapper.readTree(data);
+                if (chunk.has("error")) {
+                    throw new IOException("LLM server stream error: " + chunk.get("error"));
+                }
+                text.append(chunk.path("choices").path(0).path("delta").path("content").asText(""));
+                readServerStats(chunk, llmResponse.getStats());
+                if (llmRequest.getStopCondition().test(text)) {
+                    // Closing the connection makes the server stop generating
+                    llmResponse.setStoppedEarly(true);
+                    request.cancel();
+                    break;
+                }
+            }
+        }
+        llmResponse.setText(text.toString());
+    }
+
+    /**
+     * Copies the token counts of {@code usage} and, from llama.cpp server, the durations of {@code timings}
+     */
+    private static void readServerStats(JsonNode json, LlmCallStats stats) {
+        JsonNode usage = json.get("usage");
+        if (usage != null && usage.isObject()) {
+            stats.setPromptEvalCount(usage.path("prompt_tokens").asLong(0));
+            stats.setEvalCount(usage.path("completion_tokens").asLong(0));
+            stats.setLoadDurationNanos(0);
+        }
+        JsonNode timings = json.get("timings");
+        if (timings != null && timings.isObject() && timings.has("predicted_ms")) {
+            long promptNanos = Math.round(timings.path("prompt_ms").asDouble(0) * 1_000_000);
+            long evalNanos = Math.round(timings.path("predicted_ms").asDouble(0) * 1_000_000);
+            stats.setPromptEvalDurationNanos(promptNanos);
+            stats.setEvalDurationNanos(evalNanos);
+            stats.setLoadDurationNanos(0);
+            stats.setTotalDurationNanos(promptNanos + evalNanos);
+        }
+    }
+}
@@ -35,6 +35,8 @@ public class PrevMaintRptApplication implements CommandLineRunner {
 	@Autowired
 	private PreventiveMaintenanceComplianceReportService kpiComplianceReportService;
 	@Autowired
+	private LlmClient llmClient;
+	@Autowired
 	Environment env;
 	
 	public static void main(String[] args) {
@@ -235,6 +237,11 @@ public class PrevMaintRptApplication implements CommandLineRunner {
 		} else {
 			logger.info("KPI Compliance Analysis is disabled. Enable with prepare.report.preventive.maintenance=true");
 		}
+		
+		if ("true".equalsIgnoreCase(env.getProperty("prepare.report.alarm.analysis"))
+				|| "true".equalsIgnoreCase(env.getProperty("prepare.report.preventive.maintenance"))) {
+			llmClient.logRunStats();
+		}
 	}
 	
 	
@@ -128,12 +128,23 @@ public class PreventiveMaintenanceComplianceReportService {
         viewModel.setComplianceStatus(result.getComplianceStatus());
         viewModel.setComponentName(result.getComponentName());
         viewModel.setComponentType(result.getComponentType());
+        viewModel.setCategory(result.getCategory());
         viewModel.setTest(result.getTest());
         viewModel.setMeasure(result.getMeasure());
         viewModel.setTimeline(result.getTimeline());
         viewModel.setMeasurementUnit(result.getMeasurementUnit());
         viewModel.setDescription(result.getDescription());
         viewModel.setInterpretation(result.getInterpretation());
+        if (result.getConfidence() != null) {
+            viewModel.setConfidence(Math.round(result.getConfidence() * 100) + "%");
+        }
+        viewModel.setReasons(result.getReasons());
+        viewModel.setKeyDataPoints(result.getKeyDataPoints());
+        viewModel.setDecidedBy(result.getDecidedBy());
+        viewModel.setReusedFrom(result.getReusedFrom());
+        viewModel.setSharedVerdict(result.getSharedVerdict());
+        viewModel.setThresholdCheck(result.getThresholdCheck());
+        viewModel.setAnomalyScreen(result.getAnomalyScreen());
         
         // Convert AI analysis markdown to HTML
         viewModel.setAiAnalysis(result.getAiAnalysis());
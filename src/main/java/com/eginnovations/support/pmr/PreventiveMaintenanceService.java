@@ -4,22 +4,30 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -34,8 +42,13 @@ import org.springframework.stereotype.Service;
 
 import com.eginnovations.support.pmr.model.HistoricalDataRoot;
 import com.eginnovations.support.pmr.model.KPIComplianceResult;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.eginnovations.support.pmr.model.KPIVerdict;
+import com.eginnovations.support.pmr.model.LlmRequest;
+import com.eginnovations.support.pmr.model.LlmResponse;
+import com.eginnovations.support.pmr.model.MeasureHelp;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 /**
  * Service to process preventive maintenance reports from ZIP files
@@ -46,13 +59,49 @@ public class PreventiveMaintenanceService {
     private static final Logger logger = LoggerFactory.getLogger(PreventiveMaintenanceService.class);
     private static final String AI_LOGS_DIR = "logs/ai-pm";
     
+    // "STATUS: NON-COMPLIANT", "**Status:** Compliant", "STATUS: [NEEDS REVIEW]" ...
+    private static final Pattern STATUS_LINE = Pattern.compile(
+        "STATUS\\W{0,6}:\\W{0,6}(NON[- ]COMPLIANT|NOT COMPLIANT|COMPLIANT|NEEDS[- ]REVIEW)",
+        Pattern.CASE_INSENSITIVE);
+    
+    // Compliance rules given to the LLM for every KPI
+    private static final List<String> ANALYSIS_RULES = List.of(
+        "Work within the data provided",
+        "Clearly decide COMPLIANT or NON-COMPLIANT or NEEDS REVIEW based on the data provided.",
+        "If historic values are given as - be informed that measurements are not applicable, mark the metrics as NEEDS REVIEW.",
+        "You are NOT allowed to infer that the KPI or sensor is unhealthy or faulty based solely on lack of variation. You MUST follow the interpretation guide provided.",
+        "If your general knowledge or intuition conflicts with the interpretation guide, you MUST follow the interpretation guide.",
+        "0 values for any event log errors, warnings are considered as COMPLIANT",
+        "non zero values for any event log errors, warnings are considered as NON-COMPLIANT",
+        "0 values or near-zero values for any queue is considered as COMPLIANT"
+    );
+    
+    // Error, warning, event and failure counts, which the rules above judge by any non-zero value; never decided locally
+    private static final Pattern EVENT_COUNT_MEASURE = Pattern.compile("error|warning|critical|event|fail", Pattern.CASE_INSENSITIVE);
+    
+    private static final String ROLE = "You are an expert system administrator and certified eG Innovations Engineer analyzing eG Innovations deployment data.";
+    
+    // Fixed instructions sent as the system part of every prompt, so the AI server can reuse its prompt cache;
+    // only the KPI data varies between requests
+    private static final String TEXT_SYSTEM_PROMPT = buildSystemPrompt(false);
+    private static final String VERDICT_SYSTEM_PROMPT = buildSystemPrompt(true);
+    private static final String BATCH_SYSTEM_PROMPT = buildBatchSystemPrompt();
+    
     @Autowired
-    private OllamaService ollamaService;
+    private LlmClient llmClient;
     @Autowired
     private Environment environment;
+    @Autowired
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+    @Autowired
+    private LlmTelemetry llmTelemetry;
+    @Autowired
+    private KpiSimilarityCache similarityCache;
+    @Autowired
+    private MeasureHelpIndex measureHelpIndex;
     
     private ObjectMapper objectMapper = new ObjectMapper();
-    private Properties fileCategoryMapping;
+    private FileCategoryIndex fileCategories;
     
     public PreventiveMaintenanceService() {
         loadFileCategoryMapping();
@@ -78,18 +127,19 @@ public class PreventiveMaintenanceService {
      * Load the file category mapping properties
      */
     private void loadFileCategoryMapping() {
-        fileCategoryMapping = new Properties();
+        Properties fileCategoryMapping = new Properties();
         try {
             Resource resource = new ClassPathResource("fileCategoryMapping.properties");
             if (resource.exists()) {
                 fileCategoryMapping.load(resource.getInputStream());
-                logger.info("Loaded {} file category mappings", fileCategoryMapping.size());
             } else {
                 logger.warn("fileCategoryMapping.properties not found in classpath");
             }
         } catch (IOException e) {
             logger.error("Error loading fileCategoryMapping.properties", e);
         }
+        fileCategories = new FileCategoryIndex(fileCategoryMapping);
+        logger.info("Loaded {} file category mappings", fileCategories.size());
     }
     
     /**
@@ -120,12 +170,16 @@ public class PreventiveMaintenanceService {
     
     /**
      * Process a single ZIP file and analyze all relevant entries using a configurable thread pool.
-     * Thread pool size is controlled by the property: kpi.compliance.thread.pool.size
-     * Threads are named: kpiComplianceThread-1, kpiComplianceThread-2, ...
+     * Thread pool size is controlled by the property: prepare.report.preventive.maintenance.thread.pool.size
+     * Threads are named: pmAiThread-1, pmAiThread-2, ...
+     * <p>
+     * Results are collected as soon as their analysis finishes, while at most
+     * prepare.report.preventive.maintenance.submission.window tasks are outstanding, so one slow KPI does not
+     * hold back the others. KPIs that share the verdict of an identical KPI get it once the whole ZIP is analyzed.
+     *
+     * @return the results of all relevant entries in ZIP order
      */
     public List<KPIComplianceResult> processZipFile(File zipFile) throws IOException {
-        List<KPIComplianceResult> results = new ArrayList<>();
-
         logger.info("Processing ZIP file: {}", zipFile.getName());
 
         // Read thread pool size from application.properties (default: 5)
@@ -138,7 +192,13 @@ public class PreventiveMaintenanceService {
         } catch (NumberFormatException e) {
             logger.warn("Invalid kpi.compliance.thread.pool.size, using default: {}", poolSize);
         }
+        if (concurrencyLimiter.isEnabled()) {
+            // The adaptive limiter decides how many requests are in flight; the pool only has to allow its maximum
+            poolSize = concurrencyLimiter.getMaxLimit();
+            logger.info("Adaptive LLM concurrency enabled, thread pool sized to its maximum limit");
+        }
         logger.info("Using thread pool size: {}", poolSize);
+        llmClient.warmUp();
 
         // Custom ThreadFactory to name threads kpiComplianceThread-1, -2, ...
         final AtomicInteger threadCounter = new AtomicInteger(1);
@@ -148,8 +208,32 @@ public class PreventiveMaintenanceService {
             return t;
         };
 
+        // Number of KPIs of the same component/test sent to the AI server in one prompt (1 = no batching)
+        int batchSize = getIntProperty("prepare.report.preventive.maintenance.batch.size", 1);
+        if (batchSize > 1) {
+            logger.info("Batching up to {} KPIs of the same component/test per AI request", batchSize);
+        }
+
+        // KPIs with identical payloads are analyzed once; null when collapsing is off
+        DuplicateKpiCollapser collapser = Boolean.parseBoolean(environment.getProperty(
+                "prepare.report.preventive.maintenance.collapse.duplicates", "true")) ? new DuplicateKpiCollapser() : null;
+        // Raw payloads of analyzed KPIs are kept, spilled to disk or dropped
+        KpiPayloadStore payloads = KpiPayloadStore.open(
+                environment.getProperty("prepare.report.preventive.maintenance.raw.payloads", "spill"));
+
+        // Outstanding tasks (each a KPI or a batch); bounds the futures and parsed KPIs held at a time
+        int window = getIntProperty("prepare.report.preventive.maintenance.submission.window", 0);
+        if (window == 0) {
+            window = 2 * poolSize;
+        } else if (window > 0) {
+            window = Math.max(window, poolSize);
+        }
+
         ExecutorService executor = Executors.newFixedThreadPool(poolSize, threadFactory);
-        List<Future<KPIComplianceResult>> futures = new ArrayList<>();
+        List<KPIComplianceResult> results = new ArrayList<>();
+        ResultPipeline pipeline = new ResultPipeline(executor, window, results);
+        // The report lists KPIs in ZIP order, not in the order their analysis finished
+        Map<String, Integer> zipOrder = new HashMap<>();
 
         try (ZipFile zip = new ZipFile(zipFile)) {
             Enumeration<? extends ZipEntry> entries = zip.entries();
@@ -157,6 +241,8 @@ public class PreventiveMaintenanceService {
             int skippedCount = 0;
             int totalEntries = zip.size();
             int entryIndex = 0;
+            String batchKey = null;
+            List<PreparedKPI> batch = new ArrayList<>();
 
             // Submit each eligible entry as a Callable task to the thread pool
             while (entries.hasMoreElements()) {
@@ -171,87 +257,249 @@ public class PreventiveMaintenanceService {
                 }
 
                 String entryName = entry.getName();
+                zipOrder.put(entryName, entryIndex);
 
-                // Check if this entry should be processed based on fileCategoryMapping
-                if (!shouldProcessEntry(entryName)) {
+                // Only entries in fileCategoryMapping are processed
+                String category = fileCategories.categoryOf(entryName);
+                if (category == null) {
                     skippedCount++;
                     logger.info("Skipping entry (not in category mapping): {}", entryName);
                     continue;
                 }
 
-                logger.info("Submitting entry for parallel processing: {} [thread pool size={}]", entryName, poolSize);
-
-                // Capture for use inside lambda
-                final ZipEntry capturedEntry = entry;
-
-                Callable<KPIComplianceResult> task = new Callable<KPIComplianceResult>() {
-                    @Override
-                    public KPIComplianceResult call() {
-                        logger.info("[{}] Processing entry: {}", Thread.currentThread().getName(), capturedEntry.getName());
-                        try {
-                            return processZipEntry(zip, capturedEntry);
-                        } catch (Exception e) {
-                            logger.error("[{}] Error processing entry: {}", Thread.currentThread().getName(), capturedEntry.getName(), e);
-                            return null;
-                        }
+                if (batchSize > 1) {
+                    // Batch mode: parse here so consecutive KPIs of the same component/test can be grouped
+                    PreparedKPI prepared;
+                    try {
+                        prepared = prepareZipEntry(zip, entry, category);
+                    } catch (Exception e) {
+                        logger.error("Error preparing entry: {}", entryName, e);
+                        continue;
+                    }
+                    if (prepared == null) {
+                        continue;
                     }
-                };
-				futures.add(executor.submit(task));
+                    if (collapser != null && !collapser.register(prepared.result, prepared.historicalData)) {
+                        // Identical to a KPI already queued: handed out with its verdict once the zip is done
+                        continue;
+                    }
+                    String key = prepared.result.getComponentName() + "|" + prepared.result.getTest();
+                    if (!batch.isEmpty() && (!key.equals(batchKey) || batch.size() >= batchSize)) {
+                        pipeline.submit(createBatchTask(batch, payloads));
+                        batch = new ArrayList<>();
+                    }
+                    batchKey = key;
+                    batch.add(prepared);
+                    continue;
+                }
+
+                logger.info("Submitting entry for parallel processing: {} [thread pool size={}]", entryName, poolSize);
+				pipeline.submit(createEntryTask(zip, entry, category, collapser, payloads));
+            }
+            if (!batch.isEmpty()) {
+                pipeline.submit(createBatchTask(batch, payloads));
             }
+            pipeline.drain();
 
-            // Collect results from all submitted tasks
-            int processedCount = 0;
-            for (Future<KPIComplianceResult> future : futures) {
-                try {
-                    KPIComplianceResult result = future.get();
-                    if (result != null) {
-                        results.add(result);
-                        processedCount++;
+            if (collapser != null) {
+                // KPIs whose identical representative failed are analyzed on their own, as without collapsing
+                List<KPIComplianceResult> unanalyzed = collapser.getUnanalyzedMembers();
+                if (!unanalyzed.isEmpty()) {
+                    logger.warn("{} KPI(s) with identical data could not share a verdict, analyzing them one by one",
+                            unanalyzed.size());
+                    for (KPIComplianceResult member : unanalyzed) {
+                        ZipEntry entry = zip.getEntry(member.getEntryName());
+                        pipeline.submit(createEntryTask(zip, entry, fileCategories.categoryOf(entry.getName()), null, payloads));
                     }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    logger.error("Thread interrupted while waiting for result", e);
-                } catch (ExecutionException e) {
-                    logger.error("Error retrieving result from thread", e.getCause());
+                    pipeline.drain();
+                }
+                List<KPIComplianceResult> shared = collapser.fanOut();
+                if (!shared.isEmpty()) {
+                    logger.info("{} KPI(s) with identical data shared the verdict of another KPI ({} distinct payloads)",
+                            shared.size(), collapser.getGroupCount());
                 }
+                results.addAll(shared);
             }
 
             logger.info("Processed {} entries, skipped {} entries from {}",
-                    processedCount, skippedCount, zipFile.getName());
+                    results.size(), skippedCount, zipFile.getName());
+            payloads.logStats();
+            similarityCache.logStats();
 
         } finally {
             executor.shutdown();
             logger.info("Thread pool shut down.");
+            llmTelemetry.discardUnclaimedCalls();
         }
-
+        results.sort(Comparator.comparingInt(result -> zipOrder.getOrDefault(result.getEntryName(), Integer.MAX_VALUE)));
         return results;
     }
-    
+
     /**
-     * Check if a ZIP entry should be processed based on fileCategoryMapping
+     * Runs analysis tasks on the pool with at most window of them outstanding (-1 = unlimited) and adds
+     * their results to a list, on the submitting thread, in the order the tasks finish
      */
-    private boolean shouldProcessEntry(String entryName) {
-        // Extract just the filename from the path
-        String fileName = entryName;
-        if (entryName.contains("/")) {
-            fileName = entryName.substring(entryName.lastIndexOf("/") + 1);
+    private static class ResultPipeline {
+        private final CompletionService<List<KPIComplianceResult>> completion;
+        private final int window;
+        private final List<KPIComplianceResult> results;
+        private int outstanding;
+
+        ResultPipeline(ExecutorService executor, int window, List<KPIComplianceResult> results) {
+            this.completion = new ExecutorCompletionService<>(executor);
+            this.window = window;
+            this.results = results;
         }
-        
-        // Check if this filename is in our category mapping
-        for (Object key : fileCategoryMapping.keySet()) {
-            String mappingKey = (String) key;
-            if (fileName.endsWith(mappingKey)) {
-                return true;
+
+        /**
+         * Submit a task, first collecting finished results while the window is full
+         */
+        void submit(Callable<List<KPIComplianceResult>> task) throws InterruptedIOException {
+            while (window > 0 && outstanding >= window) {
+                collectNext();
+            }
+            completion.submit(task);
+            outstanding++;
+        }
+
+        /**
+         * Wait for all outstanding tasks and collect their results
+         */
+        void drain() throws InterruptedIOException {
+            while (outstanding > 0) {
+                collectNext();
+            }
+        }
+
+        private void collectNext() throws InterruptedIOException {
+            Future<List<KPIComplianceResult>> future;
+            try {
+                future = completion.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for KPI analysis results");
+            }
+            outstanding--;
+            try {
+                List<KPIComplianceResult> finished = future.get();
+                results.addAll(finished);
+                if (!finished.isEmpty()) {
+                    logger.info("Collected {} result(s), {} so far", finished.size(), results.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for KPI analysis results");
+            } catch (ExecutionException e) {
+                logger.error("Error retrieving result from thread", e.getCause());
             }
         }
-        
-        return false;
     }
     
     /**
-     * Process a single ZIP entry (JSON file)
+     * Read an integer property, falling back to the default when missing or invalid
+     */
+    private int getIntProperty(String name, int defaultValue) {
+        String value = environment.getProperty(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid {}, using default: {}", name, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Read a comma separated list of stop sequences; empty when not configured
+     */
+    private List<String> getStopSequences(String name) {
+        String value = environment.getProperty(name);
+        if (value == null || value.isEmpty()) {
+            return List.of();
+        }
+        return Arrays.stream(value.split(",")).filter(stop -> !stop.isEmpty()).toList();
+    }
+
+    /**
+     * A parsed KPI waiting for AI analysis
+     */
+    private static class PreparedKPI {
+        private final KPIComplianceResult result;
+        private final HistoricalDataRoot.HistoricalDataContent historicalData;
+        private boolean screened; // thresholds and anomalies below are set, see screen
+        private ThresholdEvaluator.Evaluation thresholds; // null if unchecked or without thresholdData
+        private SeriesAnomalyDetector.Screen anomalies; // null if unscreened or without series
+        private KpiSimilarityCache.Lookup similarity; // embedded fingerprint, once looked up
+        private boolean failed; // the AI server answered the analysis with an error
+
+        PreparedKPI(KPIComplianceResult result, HistoricalDataRoot.HistoricalDataContent historicalData) {
+            this.result = result;
+            this.historicalData = historicalData;
+        }
+    }
+
+    /**
+     * Wrap a batch of prepared KPIs as a task for the thread pool; payloads are released once analyzed
+     */
+    private Callable<List<KPIComplianceResult>> createBatchTask(List<PreparedKPI> batch, KpiPayloadStore payloads) {
+        return () -> {
+            logger.info("[{}] Processing batch of {} KPI(s) for {} - {}", Thread.currentThread().getName(),
+                    batch.size(), batch.get(0).result.getComponentName(), batch.get(0).result.getTest());
+            try {
+                List<KPIComplianceResult> analyzed = analyzeBatch(batch);
+                analyzed.forEach(payloads::release);
+                return analyzed;
+            } catch (Exception e) {
+                logger.error("[{}] Error processing batch starting at entry: {}", Thread.currentThread().getName(),
+                        batch.get(0).result.getEntryName(), e);
+                return List.of();
+            }
+        };
+    }
+
+    /**
+     * Wrap a single ZIP entry as a task for the thread pool; its payloads are released once analyzed
+     */
+    private Callable<List<KPIComplianceResult>> createEntryTask(ZipFile zip, ZipEntry entry, String category,
+            DuplicateKpiCollapser collapser, KpiPayloadStore payloads) {
+        return () -> {
+            logger.info("[{}] Processing entry: {}", Thread.currentThread().getName(), entry.getName());
+            try {
+                KPIComplianceResult result = processZipEntry(zip, entry, category, collapser);
+                if (result == null) {
+                    return List.of();
+                }
+                payloads.release(result);
+                return List.of(result);
+            } catch (Exception e) {
+                logger.error("[{}] Error processing entry: {}", Thread.currentThread().getName(), entry.getName(), e);
+                return List.of();
+            }
+        };
+    }
+
+    /**
+     * Process a single ZIP entry (JSON file). Returns null for a KPI identical to one already registered with
+     * the collapser; the collapser hands it out with that KPI's verdict once the zip is done.
      */
-    private KPIComplianceResult processZipEntry(ZipFile zip, ZipEntry entry) throws IOException {
+    private KPIComplianceResult processZipEntry(ZipFile zip, ZipEntry entry, String category,
+            DuplicateKpiCollapser collapser) throws IOException {
+        PreparedKPI prepared = prepareZipEntry(zip, entry, category);
+        if (prepared == null) {
+            return null;
+        }
+        if (collapser != null && !collapser.register(prepared.result, prepared.historicalData)) {
+            return null;
+        }
+        return analyzeKPI(prepared);
+    }
+
+    /**
+     * Parse a ZIP entry and build its result with category, measure help and raw data, without AI analysis
+     */
+    private PreparedKPI prepareZipEntry(ZipFile zip, ZipEntry entry, String category) throws IOException {
         String entryName = entry.getName();
         
         // Read the JSON content
@@ -279,9 +527,8 @@ public class PreventiveMaintenanceService {
             return null;
         }
         
-        // Get measure help information as a Map (case-insensitive keys handled by helpers)
-        Map<String, Object> measureHelpMap = getMeasureHelp(metaData.getTest(), metaData.getMeasure());
-        if (measureHelpMap == null) {
+        MeasureHelp measureHelp = getMeasureHelp(metaData.getTest(), metaData.getMeasure());
+        if (measureHelp == null) {
 			logger.warn("No measure help found for test: {}, measure: {} in entry: {}", 
 						metaData.getTest(), metaData.getMeasure(), entryName);
 		}
@@ -289,16 +536,17 @@ public class PreventiveMaintenanceService {
         // Build result object
         KPIComplianceResult result = new KPIComplianceResult();
         result.setEntryName(entryName);
+        result.setCategory(category);
         result.setComponentName(metaData.getComponentName());
         result.setComponentType(metaData.getComponentType());
         result.setTest(metaData.getTest());
         result.setMeasure(metaData.getMeasure());
         result.setTimeline(metaData.getTimeline());
         
-        if (measureHelpMap != null) {
-            result.setDescription(getStringFromMap(measureHelpMap, "description"));
-            result.setInterpretation(getStringFromMap(measureHelpMap, "interpretation"));
-            result.setMeasurementUnit(getStringFromMap(measureHelpMap, "measurementunit"));
+        if (measureHelp != null) {
+            result.setDescription(measureHelp.getDescription());
+            result.setInterpretation(measureHelp.getInterpretation());
+            result.setMeasurementUnit(measureHelp.getMeasurementUnit());
         }
         
         // Store raw data
@@ -311,16 +559,409 @@ public class PreventiveMaintenanceService {
         }else {
 			logger.info("No diagnosis data found for entry: {}", entryName);
 		}
-        
+
+        return new PreparedKPI(result, historicalData);
+    }
+
+    /**
+     * Run the single-KPI AI analysis for a prepared entry, unless the local checks or the similarity cache
+     * decide it
+     */
+    private KPIComplianceResult analyzeKPI(PreparedKPI prepared) {
+        if (decideLocally(prepared) || reuseSimilarVerdict(prepared)) {
+            return prepared.result;
+        }
+        KPIComplianceResult result = analyzeWithTriage(prepared);
+        rememberVerdict(prepared);
+        return result;
+    }
+
+    /**
+     * Take over the verdict of a near-identical KPI analyzed before, if the similarity cache has one
+     */
+    private boolean reuseSimilarVerdict(PreparedKPI prepared) {
+        if (prepared.similarity == null) {
+            prepared.similarity = similarityCache.lookup(prepared.result, prepared.historicalData);
+        }
+        return prepared.similarity != null && prepared.similarity.reuse(prepared.result);
+    }
+
+    /**
+     * Run the threshold check and the anomaly screen of a KPI once, on the worker thread, before any prompt is built
+     */
+    private void screen(PreparedKPI prepared) {
+        if (prepared.screened) {
+            return;
+        }
+        prepared.screened = true;
+        if (Boolean.parseBoolean(environment.getProperty("prepare.report.preventive.maintenance.threshold.check", "true"))) {
+            prepared.thresholds = ThresholdEvaluator.evaluate(prepared.historicalData);
+            if (prepared.thresholds != null) {
+                prepared.result.setThresholdCheck(prepared.thresholds.describe());
+            }
+        }
+        if (Boolean.parseBoolean(environment.getProperty("prepare.report.preventive.maintenance.anomaly.screen", "true"))) {
+            prepared.anomalies = SeriesAnomalyDetector.screen(prepared.historicalData);
+            if (prepared.anomalies != null) {
+                prepared.result.setAnomalyScreen(prepared.anomalies.describe());
+            }
+        }
+    }
+
+    /**
+     * Decide a KPI as COMPLIANT without the AI server when it has thresholds, no value breaches them and no
+     * series shows an anomaly: on the clean threshold check alone, or only with a conclusive anomaly screen too.
+     * Without thresholds a steady series says nothing about its level (a disk constantly 99% full), and error,
+     * warning, event and failure counts are judged by the rules, so those KPIs are left to the AI server.
+     */
+    private boolean decideLocally(PreparedKPI prepared) {
+        screen(prepared);
+        KPIComplianceResult result = prepared.result;
+        if (EVENT_COUNT_MEASURE.matcher(result.getTest() + " " + result.getMeasure()).find()) {
+            return false;
+        }
+        ThresholdEvaluator.Evaluation thresholds = prepared.thresholds;
+        SeriesAnomalyDetector.Screen anomalies = prepared.anomalies;
+        if (thresholds == null || !thresholds.isCleanPass() || (anomalies != null && anomalies.hasAnomalies())) {
+            return false;
+        }
+        String decidedBy;
+        if (Boolean.parseBoolean(environment.getProperty(
+                "prepare.report.preventive.maintenance.threshold.check.decide", "false"))) {
+            decidedBy = "threshold check";
+        } else if (anomalies != null && anomalies.isConclusive() && Boolean.parseBoolean(
+                environment.getProperty("prepare.report.preventive.maintenance.anomaly.screen.decide", "false"))) {
+            decidedBy = "threshold check and anomaly screen";
+        } else {
+            return false;
+        }
+        List<String> reasons = new ArrayList<>();
+        reasons.add("No value breached the configured thresholds");
+        if (anomalies != null) {
+            reasons.add("No anomaly (spike, outlier or level shift) in the historical data");
+        }
+
+        StringBuilder aiAnalysis = new StringBuilder("STATUS: COMPLIANT\n\nREASON: ")
+                .append(String.join(". ", reasons)).append('.');
+        if (result.getThresholdCheck() != null) {
+            aiAnalysis.append("\n\nThreshold check: ").append(result.getThresholdCheck());
+        }
+        if (result.getAnomalyScreen() != null) {
+            aiAnalysis.append("\n\nAnomaly screen: ").append(result.getAnomalyScreen());
+        }
+        saveResponseToLog(result.getEntryName(), aiAnalysis.toString());
+        result.setAiAnalysis(aiAnalysis.toString());
+        result.setReasons(reasons);
+        result.setDecidedBy(decidedBy);
+        determineComplianceStatus(result, aiAnalysis.toString());
+        return true;
+    }
+
+    private void rememberVerdict(PreparedKPI prepared) {
+        if (prepared.similarity != null) {
+            prepared.similarity.store(prepared.result, prepared.failed);
+        }
+    }
+
+    /**
+     * Run the single-KPI AI analysis, on the triage model first when tiered triage is on
+     */
+    private KPIComplianceResult analyzeWithTriage(PreparedKPI prepared) {
+        KPIComplianceResult result = prepared.result;
+        String triageModel = getTriageModel();
+
+        if (triageModel != null) {
+            KPIVerdict verdict = generateAIVerdict(result, prepared.historicalData, triageModel,
+                    result.getEntryName() + ".triage");
+            if (verdict != null && isConfidentlyCompliant(normalizeStatus(verdict.getStatus()), verdict.getConfidence())
+                    && applyVerdict(result, verdict)) {
+                result.setDecidedBy(triageModel + " (triage)");
+                return result;
+            }
+            logger.info("Escalating {} to {}: triage verdict {} (confidence {})", result.getEntryName(),
+                    getPrimaryModel(), verdict == null ? "none" : verdict.getStatus(),
+                    verdict == null ? null : verdict.getConfidence());
+        }
+        return analyzeWithPrimaryModel(prepared);
+    }
+
+    /**
+     * Run the single-KPI AI analysis on ollama.model, without triage
+     */
+    private KPIComplianceResult analyzeWithPrimaryModel(PreparedKPI prepared) {
+        KPIComplianceResult result = prepared.result;
+        result.setDecidedBy(getPrimaryModel());
+
+        if (isVerdictOnly()) {
+            LlmResponse verdictResponse = generateAIAnalysis(result, prepared.historicalData, true);
+            prepared.failed = verdictResponse.isError();
+            String verdict = verdictResponse.getText();
+            determineComplianceStatus(result, verdict);
+            boolean explain = Boolean.parseBoolean(environment.getProperty(
+                    "prepare.report.preventive.maintenance.verdict.only.explain.non.compliant", "false"));
+            if (!explain || result.isCompliant()) {
+                result.setAiAnalysis(verdict);
+                return result;
+            }
+            logger.info("{} is {}, fetching the full explanation", result.getEntryName(), result.getComplianceStatus());
+        }
+
+        if (isStructuredOutput()) {
+            KPIVerdict verdict = generateAIVerdict(result, prepared.historicalData, null, result.getEntryName());
+            if (verdict != null && applyVerdict(result, verdict)) {
+                return result;
+            }
+            logger.info("No usable structured verdict for {}, falling back to free-text analysis", result.getEntryName());
+        }
+
         // Generate AI analysis
-        String aiAnalysis = generateAIAnalysis(result, historicalData);
+        LlmResponse analysis = generateAIAnalysis(result, prepared.historicalData, false);
+        prepared.failed = analysis.isError();
+        String aiAnalysis = analysis.getText();
         result.setAiAnalysis(aiAnalysis);
-        
+
         // Determine compliance status from AI analysis
         determineComplianceStatus(result, aiAnalysis);
-        
+
         return result;
     }
+
+    /**
+     * Analyze several KPIs of the same component/test with one prompt.
+     * The model answers with a JSON array of {kpiId, status, reason}; any KPI missing
+     * from the answer (or a response that cannot be parsed) falls back to a single-KPI prompt.
+     */
+    private List<KPIComplianceResult> analyzeBatch(List<PreparedKPI> preparedBatch) {
+        List<KPIComplianceResult> results = new ArrayList<>();
+        List<PreparedKPI> batch = new ArrayList<>();
+        for (PreparedKPI prepared : preparedBatch) {
+            if (decideLocally(prepared) || reuseSimilarVerdict(prepared)) {
+                results.add(prepared.result);
+            } else {
+                batch.add(prepared);
+            }
+        }
+        if (batch.size() <= 1) {
+            batch.forEach(prepared -> results.add(analyzeKPI(prepared)));
+            return results;
+        }
+
+        KPIComplianceResult first = batch.get(0).result;
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("You are given ").append(batch.size()).append(" KPIs of the same component and test. Analyze each KPI independently.\n\n");
+
+        prompt.append("COMMON INFORMATION:\n");
+        prompt.append("Component: ").append(first.getComponentName()).append("\n");
+        prompt.append("Component Type: ").append(first.getComponentType()).append("\n");
+        prompt.append("Test: ").append(first.getTest()).append("\n");
+        prompt.append("Timeline: ").append(first.getTimeline()).append("\n\n");
+
+        for (int i = 0; i < batch.size(); i++) {
+            KPIComplianceResult result = batch.get(i).result;
+            prompt.append("=== KPI ID: ").append(batchKpiId(i)).append(" ===\n");
+            prompt.append("Measure: ").append(result.getMeasure()).append("\n\n");
+            appendKPIDetails(prompt, result, batch.get(i).historicalData);
+        }
+        prompt.append("Analyze each of the ").append(batch.size()).append(" KPIs and respond in the required format.\n");
+
+        LlmRequest request = new LlmRequest(BATCH_SYSTEM_PROMPT, prompt.toString());
+        String batchLogName = first.getEntryName() + ".batch";
+        request.setTag(batchLogName);
+        String triageModel = getTriageModel();
+        request.setModel(triageModel);
+        int perKpiTokens = getIntProperty("ollama.num_predict.batch.per.kpi", 256);
+        request.setMaxOutputTokens(perKpiTokens == -1 ? -1 : perKpiTokens * batch.size());
+        savePromptToLog(batchLogName, request.getFullPrompt());
+        String response = isStructuredOutput()
+                ? llmClient.generateJson(request, getBatchSchema())
+                : llmClient.generate(request).getText();
+        saveResponseToLog(batchLogName, String.valueOf(response));
+        Map<String, JsonNode> verdicts = parseBatchVerdicts(response);
+
+        int fallbackCount = 0;
+        int escalatedCount = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            PreparedKPI prepared = batch.get(i);
+            JsonNode verdict = verdicts.get(batchKpiId(i));
+            String status = verdict == null ? null : normalizeStatus(verdict.path("status").asText(null));
+            if (status == null) {
+                fallbackCount++;
+                logger.info("KPI {} missing from batched answer, falling back to single-KPI prompt: {}",
+                        batchKpiId(i), prepared.result.getEntryName());
+                results.add(analyzeKPI(prepared));
+                continue;
+            }
+            Double confidence = verdict.path("confidence").isNumber() ? verdict.path("confidence").asDouble() : null;
+            if (triageModel != null && !isConfidentlyCompliant(status, confidence)) {
+                escalatedCount++;
+                logger.info("Escalating {} to {}: triage verdict {} (confidence {})", prepared.result.getEntryName(),
+                        getPrimaryModel(), status, confidence);
+                results.add(analyzeWithPrimaryModel(prepared));
+                rememberVerdict(prepared);
+                continue;
+            }
+            String aiAnalysis = "STATUS: " + status + "\n\nREASON: " + verdict.path("reason").asText("");
+            saveResponseToLog(prepared.result.getEntryName(), aiAnalysis);
+            prepared.result.setAiAnalysis(aiAnalysis);
+            prepared.result.setConfidence(confidence);
+            prepared.result.setDecidedBy(triageModel != null ? triageModel + " (triage)" : getPrimaryModel());
+            determineComplianceStatus(prepared.result, aiAnalysis);
+            rememberVerdict(prepared);
+            results.add(prepared.result);
+        }
+        logger.info("Batch of {} KPI(s) for {} - {}: {} answered in batch, {} escalated, {} fell back to single prompts",
+                batch.size(), first.getComponentName(), first.getTest(), batch.size() - fallbackCount - escalatedCount,
+                escalatedCount, fallbackCount);
+        return results;
+    }
+
+    /**
+     * Small model that classifies KPIs before ollama.model, or null when tiered triage is off
+     */
+    private String getTriageModel() {
+        String model = environment.getProperty("ollama.triage.model");
+        return model == null || model.isBlank() ? null : model.trim();
+    }
+
+    private String getPrimaryModel() {
+        return environment.getProperty("ollama.model", "llama2");
+    }
+
+    /**
+     * Whether a triage verdict can stand: only confident COMPLIANT verdicts skip the large model
+     */
+    private boolean isConfidentlyCompliant(String status, Double confidence) {
+        double threshold = Double.parseDouble(environment.getProperty("ollama.triage.confidence.threshold", "0.8"));
+        return "COMPLIANT".equals(status) && confidence != null && confidence >= threshold;
+    }
+
+    /**
+     * Whether only the STATUS line of single-KPI answers is waited for (summary-only runs)
+     */
+    private boolean isVerdictOnly() {
+        return Boolean.parseBoolean(environment.getProperty("prepare.report.preventive.maintenance.verdict.only", "false"));
+    }
+
+    /**
+     * True once the streamed text holds a STATUS line followed by a line break
+     */
+    static boolean isStatusLineComplete(CharSequence text) {
+        Matcher matcher = STATUS_LINE.matcher(text);
+        if (!matcher.find()) {
+            return false;
+        }
+        for (int i = matcher.end(); i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the AI server is asked for schema-constrained JSON verdicts
+     */
+    private boolean isStructuredOutput() {
+        return Boolean.parseBoolean(environment.getProperty("prepare.report.preventive.maintenance.structured.output", "false"));
+    }
+
+    /**
+     * Copy a structured verdict onto the result
+     * 
+     * @return false if the verdict has no recognizable status
+     */
+    private boolean applyVerdict(KPIComplianceResult result, KPIVerdict verdict) {
+        String status = normalizeStatus(verdict.getStatus());
+        if (status == null) {
+            return false;
+        }
+        result.setComplianceStatus(status);
+        result.setCompliant("COMPLIANT".equals(status));
+        result.setConfidence(verdict.getConfidence());
+        result.setReasons(verdict.getReasons());
+        result.setKeyDataPoints(verdict.getKeyDataPoints());
+        result.setAiAnalysis(verdict.getExplanation());
+        logger.info("Compliance determined for {}: {} (structured, confidence {})",
+                result.getCheckName(), status, verdict.getConfidence());
+        return true;
+    }
+
+    /**
+     * JSON schema for the batched answer: an array of {kpiId, status, reason}
+     */
+    private JsonNode getBatchSchema() {
+        ObjectNode item = objectMapper.createObjectNode();
+        item.put("type", "object");
+        ObjectNode properties = item.putObject("properties");
+        properties.putObject("kpiId").put("type", "string");
+        ObjectNode status = properties.putObject("status");
+        status.put("type", "string");
+        status.putArray("enum").add("COMPLIANT").add("NON-COMPLIANT").add("NEEDS REVIEW");
+        ObjectNode confidence = properties.putObject("confidence");
+        confidence.put("type", "number");
+        confidence.put("minimum", 0);
+        confidence.put("maximum", 1);
+        properties.putObject("reason").put("type", "string");
+        item.putArray("required").add("kpiId").add("status").add("confidence").add("reason");
+        ObjectNode schema = objectMapper.createObjectNode();
+        schema.put("type", "array");
+        schema.set("items", item);
+        return schema;
+    }
+
+    /**
+     * Identifier of the i-th KPI inside a batched prompt
+     */
+    private static String batchKpiId(int index) {
+        return "KPI-" + (index + 1);
+    }
+
+    /**
+     * Extract the JSON array of verdicts from a batched response, keyed by kpiId.
+     * Tolerates surrounding prose or markdown code fences.
+     */
+    private Map<String, JsonNode> parseBatchVerdicts(String response) {
+        Map<String, JsonNode> verdicts = new HashMap<>();
+        if (response == null) {
+            return verdicts;
+        }
+        int start = response.indexOf('[');
+        int end = response.lastIndexOf(']');
+        if (start < 0 || end <= start) {
+            logger.warn("No JSON array found in batched AI response");
+            return verdicts;
+        }
+        try {
+            JsonNode array = objectMapper.readTree(response.substring(start, end + 1));
+            for (JsonNode verdict : array) {
+                String kpiId = verdict.path("kpiId").asText(null);
+                if (kpiId != null) {
+                    verdicts.put(kpiId.trim().toUpperCase(), verdict);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not parse batched AI response as JSON: {}", e.getMessage());
+        }
+        return verdicts;
+    }
+
+    /**
+     * Map a status reported by the model onto one of the report statuses, or null if unrecognized
+     */
+    private String normalizeStatus(String status) {
+        if (status == null) {
+            return null;
+        }
+        String upper = status.trim().toUpperCase().replace('_', ' ');
+        if (upper.equals("NON-COMPLIANT") || upper.equals("NON COMPLIANT") || upper.equals("NOT COMPLIANT")) {
+            return "NON-COMPLIANT";
+        } else if (upper.equals("COMPLIANT")) {
+            return "COMPLIANT";
+        } else if (upper.equals("NEEDS REVIEW") || upper.equals("NEEDS-REVIEW")) {
+            return "NEEDS REVIEW";
+        }
+        return null;
+    }
     
     /**
      * Parse historical data from JSON content
@@ -335,136 +976,93 @@ public class PreventiveMaintenanceService {
     }
     
     /**
-     * Get measure help information from eghelp JSON files
-     * Now returns a Map&lt;String,Object&gt; instead of MeasureHelp to handle varied JSON key cases
+     * Get measure help information from the eghelp index
+     *
+     * @return null if there is no help file for the test
+     * @throws MeasureHelpNotFoundException if the help file of the test does not describe the measure
      */
-    private Map<String, Object> getMeasureHelp(String testName, String measureName) {
+    private MeasureHelp getMeasureHelp(String testName, String measureName) {
         if (testName == null || measureName == null) {
             return null;
         }
-        
-        try {
-            String tmpFileName = testName.replaceAll("/", "");
-            String helpFileName = "eghelp/" + tmpFileName + ".json";
-            Resource resource = new ClassPathResource(helpFileName);
-            
-            if (!resource.exists()) {
-                logger.warn("Help file not found: {}", helpFileName);
-                return null;
-            }
-            
-            String helpJson = new String(
-                resource.getInputStream().readAllBytes(), 
-                StandardCharsets.UTF_8
-            );
-            
-            // Parse JSON into a list of maps so we can handle arbitrary key casing
-            List<Map<String, Object>> helpList = objectMapper.readValue(
-                helpJson,
-                new TypeReference<List<Map<String, Object>>>() {}
-            );
-            
-            // Find the matching measurement entry (case-insensitive key and value matching)
-            for (Map<String, Object> measurement : helpList) {
-                String measurementValue = getStringFromMap(measurement, "measurement");
-                logger.info("Checking help entry for measure: {} against requested measure: {}",
-                            measurementValue, measureName);
-                if (measurementValue != null && measureName != null &&
-                    measurementValue.trim().equalsIgnoreCase(measureName.trim())) {
-                    logger.debug("Found help for measure: {} in test: {}", measureName, testName);
-                    return measurement;
-                }
-            }
-            
-            logger.warn("Measure '{}' not found in help file: {}", measureName, helpFileName);
+        if (!measureHelpIndex.hasTest(testName)) {
+            logger.warn("Help file not found for test: {}", testName);
+            return null;
+        }
+        MeasureHelp measureHelp = measureHelpIndex.find(testName, measureName);
+        if (measureHelp == null) {
+            logger.warn("Measure '{}' not found in help file of test: {}", measureName, testName);
             throw new MeasureHelpNotFoundException("Measure help not found for test: " + testName + ", measure: " + measureName);
-            
-        } catch (IOException e) {
-            logger.error("Error reading help file for test: " + testName, e);
         }
-        
-        return null;
+        return measureHelp;
     }
     
     /**
-     * Helper to retrieve a string value from a map using case-insensitive key matching.
+     * Generate AI analysis using the configured LLM backend
+     * 
+     * @param verdictOnly Stop generating as soon as the STATUS line is complete; the reason is cut short
+     * 
+     * @return The response, whose text is the analysis or, on error, a message for the report
      */
-    private String getStringFromMap(Map<String, Object> map, String key) {
-        if (map == null || key == null) return null;
+    private LlmResponse generateAIAnalysis(KPIComplianceResult result, 
+                                     HistoricalDataRoot.HistoricalDataContent historicalData,
+                                     boolean verdictOnly) {
+        LlmRequest request = buildAnalysisPrompt(result, historicalData, false);
+        request.setTag(result.getEntryName());
+        if (verdictOnly) {
+            request.setStopCondition(PreventiveMaintenanceService::isStatusLineComplete);
+        }
         
-        // Normalize the search key: lowercase and remove spaces/underscores
-        String normalizedKey = normalizeKey(key);
+        // Save prompt to log file
+        savePromptToLog(result.getEntryName(), request.getFullPrompt());
         
-        for (String k : map.keySet()) {
-            if (k == null) continue;
-            
-            // Normalize the map key the same way
-            String normalizedMapKey = normalizeKey(k);
-            
-            if (normalizedMapKey.equals(normalizedKey)) {
-                Object val = map.get(k);
-                return val == null ? null : String.valueOf(val);
-            }
+        // Get response from the LLM backend; errors come back as a message for the report
+        LlmResponse llmResponse = llmClient.generate(request);
+        if (llmResponse.isStoppedEarly()) {
+            llmResponse.setText(llmResponse.getText().stripTrailing()
+                    + "\n\n_(Verdict-only analysis: reason truncated once the status was known.)_");
         }
-        return null;
-    }
-    
-    /**
-     * Helper to retrieve a list of strings from a map value (e.g., troubleshootingSteps)
-     */
-    @SuppressWarnings("unchecked")
-    private List<String> getStringListFromMap(Map<String, Object> map, String key) {
-        if (map == null || key == null) return null;
         
-        // Normalize the search key: lowercase and remove spaces/underscores
-        String normalizedKey = normalizeKey(key);
+        // Save response to log file
+        saveResponseToLog(result.getEntryName(), llmResponse.getText());
         
-        for (String k : map.keySet()) {
-            if (k == null) continue;
-            
-            // Normalize the map key the same way
-            String normalizedMapKey = normalizeKey(k);
-            
-            if (normalizedMapKey.equals(normalizedKey)) {
-                Object val = map.get(k);
-                if (val instanceof List) {
-                    List<?> raw = (List<?>) val;
-                    List<String> out = new ArrayList<>();
-                    for (Object o : raw) {
-                        out.add(o == null ? null : String.valueOf(o));
-                    }
-                    return out;
-                }
-            }
-        }
-        return null;
+        return llmResponse;
     }
     
     /**
-     * Normalize a key for case-insensitive matching: lowercase and remove spaces/underscores
+     * Generate a schema-constrained AI verdict using the configured LLM backend
+     * 
+     * @param model Model to ask, or null for ollama.model
+     * @param logName Name of the prompt/response logs and telemetry tag
+     * 
+     * @return The verdict, or null if none could be obtained
      */
-    private String normalizeKey(String key) {
-        if (key == null) return "";
+    private KPIVerdict generateAIVerdict(KPIComplianceResult result,
+                                         HistoricalDataRoot.HistoricalDataContent historicalData,
+                                         String model, String logName) {
+        LlmRequest request = buildAnalysisPrompt(result, historicalData, true);
+        request.setModel(model);
+        request.setTag(logName);
+        savePromptToLog(logName, request.getFullPrompt());
         
-        StringBuilder normalized = new StringBuilder();
-        for (int i = 0; i < key.length(); i++) {
-            char c = key.charAt(i);
-            if (c != ' ' && c != '_' && c != '-') {
-                normalized.append(Character.toLowerCase(c));
-            }
+        KPIVerdict verdict = llmClient.generateVerdict(request);
+        try {
+            saveResponseToLog(logName, verdict == null ? "(no structured verdict)"
+                    : objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(verdict));
+        } catch (IOException e) {
+            logger.error("Error serializing verdict for: " + result.getEntryName(), e);
         }
-        return normalized.toString();
+        return verdict;
     }
     
     /**
-     * Generate AI analysis using Ollama
+     * Build the single-KPI analysis prompt, asking either for STATUS/REASON text or for a JSON verdict
      */
-    private String generateAIAnalysis(KPIComplianceResult result, 
-                                     HistoricalDataRoot.HistoricalDataContent historicalData) {
+    private LlmRequest buildAnalysisPrompt(KPIComplianceResult result,
+                                           HistoricalDataRoot.HistoricalDataContent historicalData,
+                                           boolean structured) {
         StringBuilder prompt = new StringBuilder();
         
-        prompt.append("You are an expert system administrator and certified eG Innovations Engineer analyzing eG Innovations deployment data.\n\n");
-        
         prompt.append("KPI INFORMATION:\n");
         prompt.append("Component: ").append(result.getComponentName()).append("\n");
         prompt.append("Component Type: ").append(result.getComponentType()).append("\n");
@@ -472,6 +1070,74 @@ public class PreventiveMaintenanceService {
         prompt.append("Measure: ").append(result.getMeasure()).append("\n");
         prompt.append("Timeline: ").append(result.getTimeline()).append("\n\n");
         
+        appendKPIDetails(prompt, result, historicalData);
+        prompt.append("Analyze this KPI and respond in the required format.\n");
+        
+        LlmRequest request = new LlmRequest(structured ? VERDICT_SYSTEM_PROMPT : TEXT_SYSTEM_PROMPT, prompt.toString());
+        request.setMaxOutputTokens(getIntProperty("ollama.num_predict.kpi", 1024));
+        request.setStop(getStopSequences("ollama.stop.kpi"));
+        return request;
+    }
+    
+    /**
+     * Fixed part of the single-KPI prompt: role, analysis rules and response format
+     */
+    private static String buildSystemPrompt(boolean structured) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append(ROLE).append("\n\n");
+        prompt.append("ANALYSIS REQUIRED:\n");
+        prompt.append("Based on the description, interpretation guide, and historical data the user provides for a KPI, ");
+        prompt.append("analyze whether this KPI is COMPLIANT (healthy) or NON-COMPLIANT (needs attention).\n\n");
+        prompt.append("Please provide:\n");
+        prompt.append("1. A clear status: COMPLIANT or NON-COMPLIANT\n");
+        prompt.append("2. A detailed explanation of why you reached this conclusion\n");
+        prompt.append("3. Any specific concerns or recommendations if non-compliant\n");
+        prompt.append("4. Key data points that support your analysis\n");
+        appendAnalysisRules(prompt, 5);
+        prompt.append("\n\n");
+        
+        if (structured) {
+            prompt.append("Format your response as a JSON object with these fields:\n");
+            prompt.append("status: COMPLIANT or NON-COMPLIANT or NEEDS REVIEW\n");
+            prompt.append("confidence: your confidence in the status, from 0 to 1\n");
+            prompt.append("reasons: short list of the reasons for your verdict\n");
+            prompt.append("keyDataPoints: list of the data points that support your analysis\n");
+            prompt.append("explanation: your detailed analysis and recommendations in GitHub-flavored Markdown\n");
+        } else {
+            prompt.append("Format your response as:\n");
+            prompt.append("STATUS: [COMPLIANT or NON-COMPLIANT or NEEDS REVIEW]\n\n");
+            prompt.append("REASON: [Your detailed analysis and justification for your verdict]\n");
+        }
+        
+        return prompt.toString();
+    }
+    
+    /**
+     * Fixed part of the batched prompt: role, analysis rules and the JSON array format
+     */
+    private static String buildBatchSystemPrompt() {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append(ROLE).append("\n\n");
+        prompt.append("The user gives you several KPIs of the same component and test, each with a KPI ID. Analyze each KPI independently.\n\n");
+        prompt.append("ANALYSIS REQUIRED:\n");
+        prompt.append("Based on the description, interpretation guide, and historical data provided for each KPI, ");
+        prompt.append("decide whether each KPI is COMPLIANT (healthy), NON-COMPLIANT (needs attention) or NEEDS REVIEW.\n\n");
+        prompt.append("Rules:\n");
+        appendAnalysisRules(prompt, 1);
+        prompt.append("\n\n");
+
+        prompt.append("Format your response as a JSON array only, with exactly one object per KPI ID and no other text:\n");
+        prompt.append("[{\"kpiId\": \"").append(batchKpiId(0)).append("\", \"status\": \"COMPLIANT or NON-COMPLIANT or NEEDS REVIEW\", ");
+        prompt.append("\"confidence\": your confidence in the status from 0 to 1, ");
+        prompt.append("\"reason\": \"Your analysis and justification for your verdict, citing key data points\"}]\n");
+        return prompt.toString();
+    }
+    
+    /**
+     * Append description, interpretation, unit, historical data and diagnosis data of a KPI to a prompt
+     */
+    private void appendKPIDetails(StringBuilder prompt, KPIComplianceResult result,
+                                  HistoricalDataRoot.HistoricalDataContent historicalData) {
         if (result.getDescription() != null && !result.getDescription().isEmpty()) {
             prompt.append("DESCRIPTION:\n");
             prompt.append(result.getDescription()).append("\n\n");
@@ -485,6 +1151,17 @@ public class PreventiveMaintenanceService {
         if (result.getMeasurementUnit() != null && !result.getMeasurementUnit().isEmpty()) {
             prompt.append("Measurement Unit: ").append(result.getMeasurementUnit()).append("\n\n");
         }
+
+        if (result.getThresholdCheck() != null) {
+            // The thresholdData layout is not confirmed yet (see ThresholdEvaluator): a hint, not a fact
+            prompt.append("THRESHOLD CHECK (local estimate from the thresholdData; confirm it against the HISTORICAL DATA):\n");
+            prompt.append(result.getThresholdCheck()).append("\n\n");
+        }
+
+        if (result.getAnomalyScreen() != null) {
+            prompt.append("ANOMALY SCREEN (computed locally, check these windows first):\n");
+            prompt.append(result.getAnomalyScreen()).append("\n\n");
+        }
         
         prompt.append("HISTORICAL DATA:\n");
         try {
@@ -509,46 +1186,15 @@ public class PreventiveMaintenanceService {
             }
             prompt.append(diagnosisStr).append("\n\n");
         }
-        
-        prompt.append("ANALYSIS REQUIRED:\n");
-        prompt.append("Based on the description, interpretation guide, and historical data provided above, ");
-        prompt.append("analyze whether this KPI is COMPLIANT (healthy) or NON-COMPLIANT (needs attention).\n\n");
-        prompt.append("Please provide:\n");
-        prompt.append("1. A clear status: COMPLIANT or NON-COMPLIANT\n");
-        prompt.append("2. A detailed explanation of why you reached this conclusion\n");
-        prompt.append("3. Any specific concerns or recommendations if non-compliant\n");
-        prompt.append("4. Key data points that support your analysis\n");
-        prompt.append("5. Work within the data provided\n");
-        prompt.append("6. Clearly decide COMPLIANT or NON-COMPLIANT or NEEDS REVIEW based on the data provided.\n");
-        prompt.append("7. If historic values are given as - be informed that measurements are not applicable, mark the metrics as NEEDS REVIEW.\n");
-        prompt.append("8. You are NOT allowed to infer that the KPI or sensor is unhealthy or faulty based solely on lack of variation. You MUST follow the interpretation guide above.\n");
-        prompt.append("9. If your general knowledge or intuition conflicts with the interpretation guide, you MUST follow the interpretation guide.\n");
-        prompt.append("10. 0 values for any event log errors, warnings are considered as COMPLIANT\n");
-        prompt.append("11. non zero values for any event log errors, warnings are considered as NON-COMPLIANT\n");
-        prompt.append("12. 0 values or near-zero values for any queue is considered as COMPLIANT\n");
-        prompt.append("\n\n");
-        
-        prompt.append("Format your response as:\n");
-        prompt.append("STATUS: [COMPLIANT or NON-COMPLIANT or NEEDS REVIEW]\n\n");
-        prompt.append("REASON: [Your detailed analysis and justification for your verdict]\n");
-        
-        String promptText = prompt.toString();
-        String response = null;
-        
-        try {
-            // Save prompt to log file
-            savePromptToLog(result.getEntryName(), promptText);
-            
-            // Get response from Ollama
-            response = ollamaService.generateResponse(promptText);
-            
-            // Save response to log file
-            saveResponseToLog(result.getEntryName(), response);
-            
-            return response;
-        } catch (IOException e) {
-            logger.error("Error generating AI analysis for: " + result.getEntryName(), e);
-            return "AI analysis unavailable due to error: " + e.getMessage();
+    }
+    
+    /**
+     * Append the compliance rules shared by single-KPI and batched prompts, numbered from firstNumber
+     */
+    private static void appendAnalysisRules(StringBuilder prompt, int firstNumber) {
+        int number = firstNumber;
+        for (String rule : ANALYSIS_RULES) {
+            prompt.append(number++).append(". ").append(rule).append("\n");
         }
     }
     
@@ -588,6 +1234,7 @@ public class PreventiveMaintenanceService {
                 writer.write("AI RESPONSE LOG\n");
                 writer.write("Entry: " + entryName + "\n");
                 writer.write("Timestamp: " + java.time.LocalDateTime.now() + "\n");
+                writer.write(llmTelemetry.formatLogHeader(entryName));
                 writer.write("=".repeat(80) + "\n\n");
                 writer.write(response);
             }
@@ -627,6 +1274,16 @@ public class PreventiveMaintenanceService {
             return;
         }
         
+        // Prefer the STATUS line the prompt asks for, tolerating markdown emphasis around it
+        Matcher statusLine = STATUS_LINE.matcher(aiAnalysis);
+        if (statusLine.find()) {
+            String status = normalizeStatus(statusLine.group(1));
+            result.setComplianceStatus(status);
+            result.setCompliant("COMPLIANT".equals(status));
+            logger.info("Compliance determined for {}: {}", result.getCheckName(), status);
+            return;
+        }
+        
         String upperAnalysis = aiAnalysis.toUpperCase();
         
         // Look for explicit status in the response
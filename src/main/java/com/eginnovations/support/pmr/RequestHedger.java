@@ -0,0 +1,289 @@
+package com.eginnovations.support.pmr;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import com.eginnovations.support.pmr.model.LlmResponse;
+
+/**
+ * Hedges slow LLM requests: when a request has not produced its first token within the
+ * {@code ollama.hedge.percentile} of recently observed time to first token, a duplicate is sent,
+ * preferably to another endpoint. The first successful answer wins and the other request is cancelled.
+ * <p>
+ * Hedging needs {@code ollama.hedge.min.samples} observations before it starts. The saved latency
+ * reported at the end of the run is an estimate: when the hedge wins, the primary request is assumed to
+ * finish one median generation time after its first token (or after the moment the hedge won, if it had
+ * not produced one yet).
+ */
+@Component
+public class RequestHedger implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestHedger.class);
+
+    private static final int WINDOW_SIZE = 200;
+
+    @Autowired
+    private Environment env;
+
+    private final LatencyWindow timeToFirstToken = new LatencyWindow();
+    private final LatencyWindow generationTime = new LatencyWindow();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong savedMillis = new AtomicLong();
+    private volatile ExecutorService executor;
+
+    public boolean isEnabled() {
+        return Boolean.parseBoolean(env.getProperty("ollama.hedge.enabled", "false"));
+    }
+
+    /**
+     * Runs a request through {@code send}, which is called once more with a second {@link Attempt}
+     * if the first one is slow to start
+     */
+    public LlmResponse execute(Function<Attempt, LlmResponse> send) {
+        requests.incrementAndGet();
+        long threshold = thresholdMillis();
+        Attempt primary = new Attempt(null);
+        CompletableFuture<LlmResponse> primaryResult = CompletableFuture.supplyAsync(() -> send.apply(primary), getExecutor());
+        if (threshold < 0 || primary.awaitStart(threshold)) {
+            return observe(primary, primaryResult.join());
+        }
+
+        hedged.incrementAndGet();
+        logger.info("No first token after {} ms, sending a hedged request", threshold);
+        Attempt hedge = new Attempt(primary);
+        CompletableFuture<LlmResponse> hedgeResult = CompletableFuture.supplyAsync(() -> send.apply(hedge), getExecutor());
+
+        CompletableFuture.anyOf(primaryResult, hedgeResult).join();
+        boolean hedgeFirst = hedgeResult.isDone() && (!primaryResult.isDone() || isSuccess(hedgeResult.join()));
+        CompletableFuture<LlmResponse> first = hedgeFirst ? hedgeResult : primaryResult;
+        CompletableFuture<LlmResponse> second = hedgeFirst ? primaryResult : hedgeResult;
+        Attempt winner = hedgeFirst ? hedge : primary;
+        Attempt loser = hedgeFirst ? primary : hedge;
+        LlmResponse response = first.join();
+        if (!isSuccess(response)) {
+            // The first answer is an error: the other request may still succeed
+            LlmResponse other = second.join();
+            if (isSuccess(other)) {
+                Attempt swap = winner;
+                winner = loser;
+                loser = swap;
+                response = other;
+            }
+        }
+        loser.cancel();
+        if (winner == hedge && isSuccess(response)) {
+            hedgeWins.incrementAndGet();
+            savedMillis.addAndGet(estimateSavedMillis(primary, hedge));
+        }
+        return observe(winner, response);
+    }
+
+    /**
+     * Logs the hedge rate and the estimated latency saved
+     */
+    public void logStats() {
+        if (!isEnabled() || requests.get() == 0) {
+            return;
+        }
+        String summary = String.format(
+                "Hedged LLM requests: %d of %d (%.1f%%), hedge answered first %d time(s), estimated latency saved %.1f s, "
+                + "current hedge delay %d ms",
+                hedged.get(), requests.get(), hedged.get() * 100.0 / requests.get(), hedgeWins.get(),
+                savedMillis.get() / 1000.0, thresholdMillis());
+        logger.info(summary);
+        System.out.println(summary);
+    }
+
+    private LlmResponse observe(Attempt attempt, LlmResponse response) {
+        if (isSuccess(response) && attempt.firstTokenNanos > 0) {
+            timeToFirstToken.add(attempt.timeToFirstTokenMillis());
+            generationTime.add(TimeUnit.NANOSECONDS.toMillis(attempt.doneNanos - attempt.firstTokenNanos));
+        }
+        return response;
+    }
+
+    private long estimateSavedMillis(Attempt primary, Attempt hedge) {
+        long medianGeneration = generationTime.percentile(50);
+        long wonAt = TimeUnit.NANOSECONDS.toMillis(hedge.doneNanos - primary.sentNanos);
+        long primaryDone = primary.firstTokenNanos > 0
+                ? primary.timeToFirstTokenMillis() + medianGeneration
+                : wonAt + medianGeneration;
+        return Math.max(0, primaryDone - wonAt);
+    }
+
+    private long thresholdMillis() {
+        int minSamples = Integer.parseInt(env.getProperty("ollama.hedge.min.samples", "20"));
+        if (timeToFirstToken.size() < minSamples) {
+            return -1;
+        }
+        return timeToFirstToken.percentile(Double.parseDouble(env.getProperty("ollama.hedge.percentile", "95")));
+    }
+
+    private static boolean isSuccess(LlmResponse response) {
+        return response != null && !response.isError();
+    }
+
+    private ExecutorService getExecutor() {
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    AtomicInteger threadCounter = new AtomicInteger(1);
+                    executor = Executors.newCachedThreadPool(r -> {
+                        Thread t = new Thread(r, "llmHedge-" + threadCounter.getAndIncrement());
+                        t.setDaemon(true);
+                        return t;
+                    });
+                }
+            }
+        }
+        return executor;
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * One copy of a hedged request. The sender reports when the request is sent, its first token and
+     * its end; the hedger may cancel it at any time. A hedge also counts as cancelled once the request it
+     * duplicates has succeeded, so one still waiting for a permit or an endpoint gives up instead of taking it.
+     */
+    public static class Attempt {
+        private final Attempt duplicates;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private volatile Object endpoint;
+        private volatile HttpUriRequestBase request;
+        private volatile boolean cancelled;
+        private volatile long sentNanos;
+        private volatile long firstTokenNanos;
+        private volatile long doneNanos;
+        private volatile boolean succeeded;
+
+        Attempt(Attempt duplicates) {
+            this.duplicates = duplicates;
+        }
+
+        /**
+         * Endpoint of the request this one duplicates, or null
+         */
+        public Object getAvoidEndpoint() {
+            return duplicates == null ? null : duplicates.endpoint;
+        }
+
+        public boolean isCancelled() {
+            return cancelled || (duplicates != null && duplicates.succeeded);
+        }
+
+        /**
+         * Called right before the HTTP request is executed
+         */
+        public void sent(Object endpoint, HttpUriRequestBase request) {
+            this.endpoint = endpoint;
+            this.request = request;
+            this.sentNanos = System.nanoTime();
+            if (cancelled) {
+                request.cancel();
+            }
+        }
+
+        public void firstToken() {
+            if (firstTokenNanos == 0) {
+                firstTokenNanos = System.nanoTime();
+                started.countDown();
+            }
+        }
+
+        /**
+         * Called when the request ended, before its permit and endpoint are released
+         */
+        public void done(boolean succeeded) {
+            this.succeeded = succeeded;
+            doneNanos = System.nanoTime();
+            started.countDown();
+        }
+
+        void cancel() {
+            cancelled = true;
+            HttpUriRequestBase current = request;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        long timeToFirstTokenMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(firstTokenNanos - sentNanos);
+        }
+
+        /**
+         * Waits until the request produced a token or ended; false once it has been sent for
+         * thresholdMillis without either
+         */
+        boolean awaitStart(long thresholdMillis) {
+            try {
+                while (true) {
+                    long waitMillis = sentNanos == 0 ? 50
+                            : thresholdMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sentNanos);
+                    if (sentNanos != 0 && waitMillis <= 0) {
+                        return false;
+                    }
+                    if (started.await(waitMillis, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * The last {@link #WINDOW_SIZE} latencies, for percentiles
+     */
+    private static class LatencyWindow {
+        private final Deque<Long> samples = new ArrayDeque<>();
+
+        synchronized void add(long millis) {
+            samples.addLast(millis);
+            if (samples.size() > WINDOW_SIZE) {
+                samples.removeFirst();
+            }
+        }
+
+        synchronized int size() {
+            return samples.size();
+        }
+
+        synchronized long percentile(double percentile) {
+            if (samples.isEmpty()) {
+                return 0;
+            }
+            long[] sorted = samples.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+    }
+}
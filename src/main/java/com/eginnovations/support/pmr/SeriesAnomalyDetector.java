@@ -0,0 +1,289 @@
+package com.eginnovations.support.pmr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.eginnovations.support.pmr.model.HistoricalDataRoot;
+
+/**
+ * Local pre-screen of the historical series of a KPI, so that healthy flat or seasonal series need not be
+ * read by the AI server to find nothing. Three cheap detectors run over each series:
+ * <ul>
+ * <li>EWMA: a value more than {@value #EWMA_LIMIT} deviations from the exponentially weighted mean of the
+ * values before it</li>
+ * <li>MAD: a modified z-score above {@value #MAD_LIMIT} against the median and median absolute deviation of
+ * the whole series, which a few outliers cannot inflate</li>
+ * <li>level shift: the split that best separates the series into two levels, kept if the medians of the two
+ * sides differ by more than {@value #SHIFT_LIMIT} times their own spread; a seasonal series has the same
+ * level on both sides and is not flagged</li>
+ * </ul>
+ * Each series is parsed into primitive arrays once; flagged values are merged into windows for the prompt.
+ */
+class SeriesAnomalyDetector {
+
+    static final double EWMA_ALPHA = 0.3;
+    static final double EWMA_LIMIT = 4.0;
+    static final double MAD_LIMIT = 3.5;
+    static final double SHIFT_LIMIT = 3.0;
+    /** Series with fewer values are too short to screen */
+    static final int MIN_VALUES = 8;
+    /** Windows listed in the summary; the rest are only counted */
+    static final int MAX_WINDOWS_LISTED = 5;
+
+    private static final double MAD_TO_SIGMA = 1.4826;
+    private static final int EWMA = 1;
+    private static final int MAD = 2;
+
+    private SeriesAnomalyDetector() {
+    }
+
+    /**
+     * @return null if the KPI has no series
+     */
+    static Screen screen(HistoricalDataRoot.HistoricalDataContent data) {
+        if (data.getData() == null || data.getData().isEmpty()) {
+            return null;
+        }
+        Screen screen = new Screen();
+        new TreeMap<>(data.getData()).forEach((series, points) -> screen.screenSeries(series, points));
+        return screen;
+    }
+
+    /**
+     * Anomalies found in the series of one KPI
+     */
+    static class Screen {
+        private final List<String> windows = new ArrayList<>();
+        private final List<String> shifts = new ArrayList<>();
+        private int series;
+        private int values;
+        private int nonNumericValues;
+        private int shortSeries;
+        private int windowCount;
+        private int anomalousValues;
+
+        private void screenSeries(String name, Object points) {
+            series++;
+            if (!(points instanceof List<?> list)) {
+                shortSeries++;
+                return;
+            }
+            double[] v = new double[list.size()];
+            Object[] times = new Object[list.size()];
+            int n = 0;
+            for (Object point : list) {
+                Object value = point instanceof Map<?, ?> map ? map.get("value") : point;
+                try {
+                    v[n] = value instanceof Number number ? number.doubleValue() : Double.parseDouble(String.valueOf(value).trim());
+                    times[n++] = point instanceof Map<?, ?> map ? map.get("time") : null;
+                } catch (NumberFormatException e) {
+                    nonNumericValues++;
+                }
+            }
+            values += n;
+            if (n < MIN_VALUES) {
+                shortSeries++;
+                return;
+            }
+
+            double[] scratch = new double[n];
+            double median = median(v, 0, n, scratch);
+            double sigma = MAD_TO_SIGMA * mad(v, 0, n, median, scratch);
+            byte[] flags = new byte[n];
+            flagByMad(v, n, median, sigma, flags);
+            if (sigma > 0) {
+                flagByEwma(v, n, sigma, flags);
+            }
+            collectWindows(name, v, times, n, median, flags);
+            detectLevelShift(name, v, times, n, scratch);
+        }
+
+        private void flagByMad(double[] v, int n, double median, double sigma, byte[] flags) {
+            if (sigma > 0) {
+                for (int i = 0; i < n; i++) {
+                    if (Math.abs(v[i] - median) / sigma > MAD_LIMIT) {
+                        flags[i] |= MAD;
+                    }
+                }
+                return;
+            }
+            // Over half the values sit on the median: the others are outliers only if they are rare
+            int off = 0;
+            for (int i = 0; i < n; i++) {
+                if (v[i] != median) {
+                    off++;
+                }
+            }
+            if (off > 0 && off <= n / 10) {
+                for (int i = 0; i < n; i++) {
+                    if (v[i] != median) {
+                        flags[i] |= MAD;
+                    }
+                }
+            }
+        }
+
+        private void flagByEwma(double[] v, int n, double sigma, byte[] flags) {
+            // The robust sigma is a floor, so a locally quiet stretch does not turn ordinary noise into anomalies
+            double floor = sigma / 2;
+            double mean = v[0];
+            double variance = 0;
+            for (int i = 1; i < n; i++) {
+                double diff = v[i] - mean;
+                if (i >= 5 && Math.abs(diff) > EWMA_LIMIT * Math.max(Math.sqrt(variance), floor)) {
+                    flags[i] |= EWMA;
+                }
+                mean += EWMA_ALPHA * diff;
+                variance = (1 - EWMA_ALPHA) * (variance + EWMA_ALPHA * diff * diff);
+            }
+        }
+
+        private void collectWindows(String name, double[] v, Object[] times, int n, double median, byte[] flags) {
+            int i = 0;
+            while (i < n) {
+                if (flags[i] == 0) {
+                    i++;
+                    continue;
+                }
+                // A window runs until two unflagged values in a row
+                int start = i;
+                int end = i;
+                int detectors = 0;
+                int count = 0;
+                double peak = v[i];
+                for (; i < n && (flags[i] != 0 || (i + 1 < n && flags[i + 1] != 0)); i++) {
+                    if (flags[i] != 0) {
+                        end = i;
+                        count++;
+                        detectors |= flags[i];
+                        if (Math.abs(v[i] - median) > Math.abs(peak - median)) {
+                            peak = v[i];
+                        }
+                    }
+                }
+                anomalousValues += count;
+                if (windowCount++ < MAX_WINDOWS_LISTED) {
+                    windows.add(name + " " + span(times, start, end) + ": " + count + " value(s), peak " + format(peak)
+                            + " vs median " + format(median) + " (" + detectorNames(detectors) + ")");
+                }
+            }
+        }
+
+        private void detectLevelShift(String name, double[] v, Object[] times, int n, double[] scratch) {
+            // Candidate split: the largest cumulative deviation from the overall mean
+            double total = 0;
+            for (int i = 0; i < n; i++) {
+                total += v[i];
+            }
+            double mean = total / n;
+            int minSide = Math.max(3, n / 10);
+            double cumulative = 0;
+            double best = 0;
+            int split = -1;
+            for (int i = 0; i < n - 1; i++) {
+                cumulative += v[i] - mean;
+                if (i + 1 >= minSide && n - i - 1 >= minSide && Math.abs(cumulative) > best) {
+                    best = Math.abs(cumulative);
+                    split = i + 1;
+                }
+            }
+            if (split < 0) {
+                return;
+            }
+            double before = median(v, 0, split, scratch);
+            double after = median(v, split, n, scratch);
+            double spread = MAD_TO_SIGMA * Math.max(mad(v, 0, split, before, scratch), mad(v, split, n, after, scratch));
+            double scale = Math.max(spread, 1e-9 * Math.max(1, Math.max(Math.abs(before), Math.abs(after))));
+            if (Math.abs(after - before) > SHIFT_LIMIT * scale) {
+                shifts.add(name + " at " + (times[split] != null ? times[split] : "value " + (split + 1))
+                        + ": median " + format(before) + " before, " + format(after) + " after");
+            }
+        }
+
+        boolean hasAnomalies() {
+            return windowCount > 0 || !shifts.isEmpty();
+        }
+
+        /**
+         * Every series was long enough and fully numeric, so the absence of anomalies means something
+         */
+        boolean isConclusive() {
+            return series > 0 && shortSeries == 0 && nonNumericValues == 0;
+        }
+
+        /**
+         * One-paragraph summary for the prompt and the report
+         */
+        String describe() {
+            StringBuilder text = new StringBuilder();
+            text.append(values).append(" value(s) in ").append(series).append(" series screened (EWMA, MAD, level shift): ");
+            if (!hasAnomalies()) {
+                text.append("no anomalies.");
+            } else {
+                if (windowCount > 0) {
+                    text.append(windowCount).append(" anomalous window(s) with ").append(anomalousValues)
+                            .append(" value(s): ").append(String.join("; ", windows));
+                    if (windowCount > windows.size()) {
+                        text.append("; ").append(windowCount - windows.size()).append(" more");
+                    }
+                    text.append(". ");
+                }
+                if (!shifts.isEmpty()) {
+                    text.append("Level shift(s): ").append(String.join("; ", shifts)).append('.');
+                }
+            }
+            if (shortSeries > 0) {
+                text.append(' ').append(shortSeries).append(" series too short to screen (under ").append(MIN_VALUES)
+                        .append(" numeric values).");
+            }
+            if (nonNumericValues > 0) {
+                text.append(' ').append(nonNumericValues).append(" value(s) are not numeric.");
+            }
+            return text.toString().trim();
+        }
+    }
+
+    /**
+     * Median of v[from, to), using scratch (at least to - from long) for sorting
+     */
+    static double median(double[] v, int from, int to, double[] scratch) {
+        int n = to - from;
+        System.arraycopy(v, from, scratch, 0, n);
+        Arrays.sort(scratch, 0, n);
+        return n % 2 == 1 ? scratch[n / 2] : (scratch[n / 2 - 1] + scratch[n / 2]) / 2;
+    }
+
+    /**
+     * Median absolute deviation of v[from, to) around median
+     */
+    static double mad(double[] v, int from, int to, double median, double[] scratch) {
+        int n = to - from;
+        for (int i = 0; i < n; i++) {
+            scratch[i] = Math.abs(v[from + i] - median);
+        }
+        Arrays.sort(scratch, 0, n);
+        return n % 2 == 1 ? scratch[n / 2] : (scratch[n / 2 - 1] + scratch[n / 2]) / 2;
+    }
+
+    private static String span(Object[] times, int start, int end) {
+        if (times[start] == null) {
+            return "values " + (start + 1) + "-" + (end + 1);
+        }
+        return start == end ? "at " + times[start] : times[start] + " to " + times[end];
+    }
+
+    private static String detectorNames(int detectors) {
+        if (detectors == (EWMA | MAD)) {
+            return "EWMA, MAD";
+        }
+        return detectors == EWMA ? "EWMA" : "MAD";
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? String.valueOf((long) value)
+                : String.valueOf(Math.round(value * 1000) / 1000.0);
+    }
+}
@@ -0,0 +1,307 @@
+package com.eginnovations.support.pmr;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.eginnovations.support.pmr.model.HistoricalDataRoot;
+
+/**
+ * Checks the historical values of a KPI against the thresholds the PM collector stores as
+ * {@code thresholdData} next to the diagnosis data: either once for the whole measure
+ * ({@code diagnosisData.thresholdData}) or per descriptor ({@code diagnosisData.<descriptor>.thresholdData},
+ * matched to the historical series of the same name).
+ * <p>
+ * The threshold layout depends on the eG manager version and is not verified against a collected zip yet,
+ * so it is read leniently: a field named max/upper (min/lower), alone or with "threshold" or "limit"
+ * (e.g. {@code maxThreshold}, {@code upper_limit}), gives upper (lower) bounds, as a number, a string such as
+ * {@code "Critical:90/Major:80/Minor:70"} or an object keyed by severity. Non-numeric bounds such as
+ * {@code "NA"} are ignored. A value above the lowest upper bound or below the highest lower bound is a breach.
+ */
+class ThresholdEvaluator {
+
+    private static final Pattern LEVEL = Pattern.compile("(?:([A-Za-z]+)\\s*[:=]\\s*)?(-?\\d+(?:\\.\\d+)?)");
+    private static final Pattern UPPER_KEY = Pattern.compile("(thresholds?|limits?)?(max|maximum|upper)(thresholds?|limits?)?");
+    private static final Pattern LOWER_KEY = Pattern.compile("(thresholds?|limits?)?(min|minimum|lower)(thresholds?|limits?)?");
+    private static final List<DateTimeFormatter> TIME_FORMATS = List.of(
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm[:ss]"),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm[:ss]"),
+            DateTimeFormatter.ofPattern("MMM dd, yyyy HH:mm[:ss]", Locale.ENGLISH),
+            DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm[:ss]"));
+
+    private ThresholdEvaluator() {
+    }
+
+    /**
+     * @return null if the KPI carries no usable thresholds
+     */
+    static Evaluation evaluate(HistoricalDataRoot.HistoricalDataContent data) {
+        if (data.getData() == null || !(data.getDiagnosisData() instanceof Map<?, ?> diagnosis)) {
+            return null;
+        }
+        Bounds common = Bounds.parse(diagnosis.get("thresholdData"));
+        Map<String, Bounds> perSeries = new TreeMap<>();
+        diagnosis.forEach((descriptor, value) -> {
+            if (value instanceof Map<?, ?> descriptorData && descriptorData.containsKey("thresholdData")) {
+                Bounds bounds = Bounds.parse(descriptorData.get("thresholdData"));
+                if (bounds != null) {
+                    perSeries.put(String.valueOf(descriptor), bounds);
+                }
+            }
+        });
+        if (common == null && perSeries.isEmpty()) {
+            return null;
+        }
+
+        Evaluation evaluation = new Evaluation();
+        new TreeMap<>(data.getData()).forEach((series, points) -> {
+            Bounds bounds = perSeries.getOrDefault(series, common);
+            if (bounds == null) {
+                evaluation.uncheckedSeries.add(series);
+            } else {
+                evaluation.boundsBySeries.put(series, bounds);
+                evaluation.check(series, points, bounds);
+            }
+        });
+        return evaluation.boundsBySeries.isEmpty() ? null : evaluation;
+    }
+
+    /**
+     * Threshold levels of a series, each with its severity label (may be null)
+     */
+    static class Bounds {
+        private final TreeMap<Double, String> upper = new TreeMap<>();
+        private final TreeMap<Double, String> lower = new TreeMap<>();
+
+        static Bounds parse(Object thresholdData) {
+            Bounds bounds = new Bounds();
+            bounds.collect(null, thresholdData, null);
+            return bounds.upper.isEmpty() && bounds.lower.isEmpty() ? null : bounds;
+        }
+
+        private void collect(String key, Object value, TreeMap<Double, String> side) {
+            TreeMap<Double, String> target = side != null ? side : sideOf(key);
+            if (value instanceof Map<?, ?> map) {
+                map.forEach((k, v) -> collect(String.valueOf(k), v, target));
+            } else if (value instanceof List<?> list) {
+                list.forEach(item -> collect(key, item, target));
+            } else if (target != null && value != null) {
+                String severity = side != null && key != null && sideOf(key) == null ? key : null;
+                Matcher level = LEVEL.matcher(String.valueOf(value));
+                while (level.find()) {
+                    target.put(Double.parseDouble(level.group(2)), level.group(1) != null ? level.group(1) : severity);
+                }
+            }
+        }
+
+        private TreeMap<Double, String> sideOf(String key) {
+            if (key == null) {
+                return null;
+            }
+            String name = key.toLowerCase(Locale.ROOT).replaceAll("[^a-z]", "");
+            if (UPPER_KEY.matcher(name).matches()) {
+                return upper;
+            }
+            if (LOWER_KEY.matcher(name).matches()) {
+                return lower;
+            }
+            return null;
+        }
+
+        /**
+         * The crossed level furthest from normal, or null if the value is within bounds
+         */
+        Map.Entry<Double, String> breach(double value) {
+            Map.Entry<Double, String> above = upper.lowerEntry(value);
+            return above != null ? above : lower.higherEntry(value);
+        }
+
+        /**
+         * How far a value is past the breach line, comparable across upper and lower breaches
+         */
+        double excess(double value) {
+            double over = upper.isEmpty() ? 0 : value - upper.firstKey();
+            double under = lower.isEmpty() ? 0 : lower.lastKey() - value;
+            return Math.max(over, under);
+        }
+
+        @Override
+        public String toString() {
+            return "upper " + describe(upper.descendingMap()) + ", lower " + describe(lower);
+        }
+
+        private static String describe(Map<Double, String> levels) {
+            if (levels.isEmpty()) {
+                return "none";
+            }
+            List<String> parts = new ArrayList<>();
+            levels.forEach((value, severity) -> parts.add((severity == null ? "" : severity + " ") + format(value)));
+            return String.join(" / ", parts);
+        }
+    }
+
+    /**
+     * Breach statistics of one KPI
+     */
+    static class Evaluation {
+        private final Map<String, Bounds> boundsBySeries = new LinkedHashMap<>();
+        private final List<String> uncheckedSeries = new ArrayList<>();
+        private int checkedValues;
+        private int nonNumericValues;
+        private int breaches;
+        private int breachingSeries;
+        private int longestRun;
+        private Duration breachDuration = Duration.ZERO;
+        private boolean durationKnown = true;
+        private String worst;
+        private double worstExcess = -Double.MAX_VALUE;
+
+        private void check(String series, Object points, Bounds bounds) {
+            if (!(points instanceof List<?> list)) {
+                return;
+            }
+            List<Double> values = new ArrayList<>();
+            List<LocalDateTime> times = new ArrayList<>();
+            for (Object point : list) {
+                Object value = point instanceof Map<?, ?> map ? map.get("value") : point;
+                try {
+                    values.add(Double.parseDouble(String.valueOf(value).trim()));
+                    times.add(point instanceof Map<?, ?> map ? parseTime(map.get("time")) : null);
+                } catch (NumberFormatException e) {
+                    nonNumericValues++;
+                }
+            }
+            Duration interval = typicalInterval(times);
+            int run = 0;
+            boolean breached = false;
+            for (int i = 0; i < values.size(); i++) {
+                double value = values.get(i);
+                checkedValues++;
+                Map.Entry<Double, String> level = bounds.breach(value);
+                if (level == null) {
+                    run = 0;
+                    continue;
+                }
+                breached = true;
+                breaches++;
+                longestRun = Math.max(longestRun, ++run);
+                Duration step = i + 1 < times.size() && times.get(i) != null && times.get(i + 1) != null
+                        ? Duration.between(times.get(i), times.get(i + 1)).abs() : interval;
+                if (step == null) {
+                    durationKnown = false;
+                } else {
+                    breachDuration = breachDuration.plus(step);
+                }
+                double excess = bounds.excess(value);
+                if (excess > worstExcess) {
+                    worstExcess = excess;
+                    worst = format(value) + (times.get(i) != null ? " at " + times.get(i) : "") + " in " + series
+                            + " (" + (level.getValue() == null ? "" : level.getValue() + " ") + "threshold " + format(level.getKey()) + ")";
+                }
+            }
+            if (breached) {
+                breachingSeries++;
+            }
+        }
+
+        int getBreaches() {
+            return breaches;
+        }
+
+        /**
+         * No breaches, every value numeric and every series covered by a threshold
+         */
+        boolean isCleanPass() {
+            return breaches == 0 && nonNumericValues == 0 && uncheckedSeries.isEmpty() && checkedValues > 0;
+        }
+
+        /**
+         * One-paragraph summary for the prompt and the report
+         */
+        String describe() {
+            StringBuilder text = new StringBuilder();
+            Map<String, List<String>> seriesByBounds = new LinkedHashMap<>();
+            boundsBySeries.forEach((series, bounds) ->
+                    seriesByBounds.computeIfAbsent(bounds.toString(), k -> new ArrayList<>()).add(series));
+            text.append("Thresholds: ");
+            if (seriesByBounds.size() == 1) {
+                text.append(seriesByBounds.keySet().iterator().next());
+            } else {
+                List<String> parts = new ArrayList<>();
+                seriesByBounds.forEach((bounds, series) -> parts.add(String.join(", ", series) + ": " + bounds));
+                text.append(String.join("; ", parts));
+            }
+            text.append(". ").append(checkedValues).append(" value(s) in ").append(boundsBySeries.size())
+                    .append(" series checked: ");
+            if (breaches == 0) {
+                text.append("no breaches.");
+            } else {
+                text.append(breaches).append(" breach(es) (")
+                        .append(String.format(Locale.ROOT, "%.1f", 100.0 * breaches / checkedValues)).append("%) in ")
+                        .append(breachingSeries).append(" series");
+                if (durationKnown) {
+                    text.append(", about ").append(formatDuration(breachDuration)).append(" in total");
+                }
+                text.append(", longest run ").append(longestRun).append(" consecutive value(s); worst ").append(worst).append('.');
+            }
+            if (nonNumericValues > 0) {
+                text.append(' ').append(nonNumericValues).append(" value(s) are not numeric.");
+            }
+            if (!uncheckedSeries.isEmpty()) {
+                text.append(" No thresholds for: ").append(String.join(", ", uncheckedSeries)).append('.');
+            }
+            return text.toString();
+        }
+    }
+
+    private static LocalDateTime parseTime(Object time) {
+        if (time == null) {
+            return null;
+        }
+        String text = String.valueOf(time).trim();
+        for (DateTimeFormatter format : TIME_FORMATS) {
+            try {
+                return LocalDateTime.parse(text, format);
+            } catch (DateTimeParseException e) {
+                // Try the next format
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Median gap between consecutive timestamps, used for the last value of a series; null if unknown
+     */
+    private static Duration typicalInterval(List<LocalDateTime> times) {
+        List<Duration> gaps = new ArrayList<>();
+        for (int i = 1; i < times.size(); i++) {
+            if (times.get(i - 1) != null && times.get(i) != null) {
+                gaps.add(Duration.between(times.get(i - 1), times.get(i)).abs());
+            }
+        }
+        if (gaps.isEmpty()) {
+            return null;
+        }
+        gaps.sort(Comparator.naturalOrder());
+        return gaps.get(gaps.size() / 2);
+    }
+
+    private static String formatDuration(Duration duration) {
+        long minutes = duration.toMinutes();
+        return minutes < 120 ? minutes + " min" : String.format(Locale.ROOT, "%.1f h", minutes / 60.0);
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? String.valueOf((long) value) : String.valueOf(value);
+    }
+}
@@ -0,0 +1,67 @@
+package com.eginnovations.support.pmr;
+
+/**
+ * Cheap estimate of the number of tokens a text takes in an LLM prompt, without the model's tokenizer.
+ * <p>
+ * Runs of letters count one token per four characters, runs of digits one per three (numbers split
+ * into short pieces), and every other non-blank character (JSON punctuation, symbols) one token each.
+ * This errs on the high side for the JSON-heavy prompts built from eG data, which is the safe side
+ * when sizing a context window.
+ */
+public final class TokenEstimator {
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int tokens = 0;
+        int letters = 0;
+        int digits = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetter(c)) {
+                letters++;
+                tokens += flush(digits, 3);
+                digits = 0;
+            } else if (Character.isDigit(c)) {
+                digits++;
+                tokens += flush(letters, 4);
+                letters = 0;
+            } else {
+                tokens += flush(letters, 4) + flush(digits, 3);
+                letters = 0;
+                digits = 0;
+                if (!Character.isWhitespace(c)) {
+                    tokens++;
+                }
+            }
+        }
+        return tokens + flush(letters, 4) + flush(digits, 3);
+    }
+
+    /**
+     * Cuts the middle out of a text so that it fits in about maxTokens, keeping its head (which holds
+     * the KPI or alarm details) and its tail (the closing instructions)
+     */
+    public static String trimMiddle(String text, int maxTokens) {
+        int tokens = estimate(text);
+        if (tokens <= maxTokens) {
+            return text;
+        }
+        // Characters per token of this particular text, so the cut lands close to the budget
+        double charsPerToken = (double) text.length() / tokens;
+        int keepChars = Math.max(0, (int) (maxTokens * charsPerToken) - 64);
+        int head = keepChars * 2 / 3;
+        int tail = keepChars - head;
+        int removed = text.length() - head - tail;
+        return text.substring(0, head) + "\n... (" + removed + " characters trimmed to fit the context window) ...\n"
+                + text.substring(text.length() - tail);
+    }
+
+    private static int flush(int run, int charsPerToken) {
+        return (run + charsPerToken - 1) / charsPerToken;
+    }
+}
@@ -1,5 +1,7 @@
 package com.eginnovations.support.pmr.model;
 
+import java.util.List;
+
 /**
  * Model class representing an alarm for Thymeleaf template rendering
  */
@@ -31,6 +33,11 @@ public class AlarmReportData {
     // AI analysis
     private String aiAnalysis;
     
+    // Correlation: the alarm analyzed for a group of correlated alarms lists the others
+    private String anchorId;
+    private String correlationSummary;
+    private List<AlarmReportData> correlatedAlarms;
+    
     // Constructors
     public AlarmReportData() {
     }
@@ -177,6 +184,30 @@ public class AlarmReportData {
         this.aiAnalysis = aiAnalysis;
     }
     
+    public String getAnchorId() {
+        return anchorId;
+    }
+    
+    public void setAnchorId(String anchorId) {
+        this.anchorId = anchorId;
+    }
+    
+    public String getCorrelationSummary() {
+        return correlationSummary;
+    }
+    
+    public void setCorrelationSummary(String correlationSummary) {
+        this.correlationSummary = correlationSummary;
+    }
+    
+    public List<AlarmReportData> getCorrelatedAlarms() {
+        return correlatedAlarms;
+    }
+    
+    public void setCorrelatedAlarms(List<AlarmReportData> correlatedAlarms) {
+        this.correlatedAlarms = correlatedAlarms;
+    }
+    
     /**
      * Gets Bootstrap color class for priority
      * Uses custom eG color for minor priority
@@ -1,11 +1,15 @@
 package com.eginnovations.support.pmr.model;
 
+import java.util.List;
+import java.util.function.Supplier;
+
 /**
  * Model representing a KPI compliance check result
  */
 public class KPIComplianceResult {
     
     private String entryName;
+    private String category; // from fileCategoryMapping, e.g. "capacity"
     private String componentName;
     private String componentType;
     private String test;
@@ -17,8 +21,19 @@ public class KPIComplianceResult {
     private boolean compliant;
     private String complianceStatus; // "COMPLIANT", "NON-COMPLIANT", "NEEDS ATTENTION"
     private String aiAnalysis;
+    private Double confidence; // 0.0 - 1.0, only for structured verdicts
+    private List<String> reasons;
+    private List<String> keyDataPoints;
+    private String decidedBy; // model whose verdict was used, e.g. "gemma3:4b (triage)"
+    private String reusedFrom; // KPI whose verdict was reused by the similarity cache, null if analyzed itself
+    private String sharedVerdict; // e.g. "Shared verdict (12 components)" when identical KPIs were analyzed once
+    private String thresholdCheck; // breach summary against the collected thresholdData, null if there is none
+    private String anomalyScreen; // anomalous windows and level shifts found locally, null if not screened
     private String rawData;
     private String diagnosisData;
+    private boolean payloadDetached; // rawData/diagnosisData are read through the suppliers below, see detachPayloads
+    private Supplier<String> rawDataSource;
+    private Supplier<String> diagnosisDataSource;
     
     public String getEntryName() {
         return entryName;
@@ -28,6 +43,14 @@ public class KPIComplianceResult {
         this.entryName = entryName;
     }
     
+    public String getCategory() {
+        return category;
+    }
+    
+    public void setCategory(String category) {
+        this.category = category;
+    }
+    
     public String getComponentName() {
         return componentName;
     }
@@ -116,20 +139,111 @@ public class KPIComplianceResult {
         this.aiAnalysis = aiAnalysis;
     }
     
+    public Double getConfidence() {
+        return confidence;
+    }
+    
+    public void setConfidence(Double confidence) {
+        this.confidence = confidence;
+    }
+    
+    public List<String> getReasons() {
+        return reasons;
+    }
+    
+    public void setReasons(List<String> reasons) {
+        this.reasons = reasons;
+    }
+    
+    public List<String> getKeyDataPoints() {
+        return keyDataPoints;
+    }
+    
+    public void setKeyDataPoints(List<String> keyDataPoints) {
+        this.keyDataPoints = keyDataPoints;
+    }
+    
+    public String getDecidedBy() {
+        return decidedBy;
+    }
+    
+    public void setDecidedBy(String decidedBy) {
+        this.decidedBy = decidedBy;
+    }
+    
+    public String getReusedFrom() {
+        return reusedFrom;
+    }
+    
+    public void setReusedFrom(String reusedFrom) {
+        this.reusedFrom = reusedFrom;
+    }
+    
+    public String getSharedVerdict() {
+        return sharedVerdict;
+    }
+    
+    public void setSharedVerdict(String sharedVerdict) {
+        this.sharedVerdict = sharedVerdict;
+    }
+    
+    public String getThresholdCheck() {
+        return thresholdCheck;
+    }
+    
+    public void setThresholdCheck(String thresholdCheck) {
+        this.thresholdCheck = thresholdCheck;
+    }
+    
+    public String getAnomalyScreen() {
+        return anomalyScreen;
+    }
+    
+    public void setAnomalyScreen(String anomalyScreen) {
+        this.anomalyScreen = anomalyScreen;
+    }
+    
     public String getRawData() {
-        return rawData;
+        return rawDataSource != null ? rawDataSource.get() : rawData;
     }
     
+    /**
+     * Sets the raw data, also on a result whose payloads were detached: the result then holds a payload of its
+     * own again and can be released once more
+     */
     public void setRawData(String rawData) {
         this.rawData = rawData;
+        this.rawDataSource = null;
+        this.payloadDetached = false;
     }
     
     public String getDiagnosisData() {
-        return diagnosisData;
+        return diagnosisDataSource != null ? diagnosisDataSource.get() : diagnosisData;
     }
     
+    /**
+     * Sets the diagnosis data, like {@link #setRawData}
+     */
     public void setDiagnosisData(String diagnosisData) {
         this.diagnosisData = diagnosisData;
+        this.diagnosisDataSource = null;
+        this.payloadDetached = false;
+    }
+    
+    /**
+     * Lets go of the payload strings; until a setter replaces them, the getters read them through the suppliers
+     * (e.g. from a spill file or from a result with the same payload), or return null for a null supplier.
+     */
+    public void detachPayloads(Supplier<String> rawData, Supplier<String> diagnosisData) {
+        this.rawData = null;
+        this.diagnosisData = null;
+        this.rawDataSource = rawData;
+        this.diagnosisDataSource = diagnosisData;
+        this.payloadDetached = true;
+    }
+    
+    public boolean isPayloadDetached() {
+        return payloadDetached;
     }
     
     /**
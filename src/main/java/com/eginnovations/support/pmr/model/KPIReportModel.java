@@ -84,6 +84,7 @@ public class KPIReportModel {
         private String complianceStatus;
         private String componentName;
         private String componentType;
+        private String category;
         private String test;
         private String measure;
         private String timeline;
@@ -92,6 +93,14 @@ public class KPIReportModel {
         private String interpretation;
         private String aiAnalysis;
         private String aiAnalysisHtml;
+        private String confidence;
+        private List<String> reasons;
+        private List<String> keyDataPoints;
+        private String decidedBy;
+        private String reusedFrom;
+        private String sharedVerdict;
+        private String thresholdCheck;
+        private String anomalyScreen;
         
         public String getKpiId() {
             return kpiId;
@@ -157,6 +166,14 @@ public class KPIReportModel {
             this.componentType = componentType;
         }
         
+        public String getCategory() {
+            return category;
+        }
+        
+        public void setCategory(String category) {
+            this.category = category;
+        }
+        
         public String getTest() {
             return test;
         }
@@ -220,5 +237,69 @@ public class KPIReportModel {
         public void setAiAnalysisHtml(String aiAnalysisHtml) {
             this.aiAnalysisHtml = aiAnalysisHtml;
         }
+        
+        public String getConfidence() {
+            return confidence;
+        }
+        
+        public void setConfidence(String confidence) {
+            this.confidence = confidence;
+        }
+        
+        public List<String> getReasons() {
+            return reasons;
+        }
+        
+        public void setReasons(List<String> reasons) {
+            this.reasons = reasons;
+        }
+        
+        public List<String> getKeyDataPoints() {
+            return keyDataPoints;
+        }
+        
+        public void setKeyDataPoints(List<String> keyDataPoints) {
+            this.keyDataPoints = keyDataPoints;
+        }
+        
+        public String getDecidedBy() {
+            return decidedBy;
+        }
+        
+        public void setDecidedBy(String decidedBy) {
+            this.decidedBy = decidedBy;
+        }
+        
+        public String getReusedFrom() {
+            return reusedFrom;
+        }
+        
+        public void setReusedFrom(String reusedFrom) {
+            this.reusedFrom = reusedFrom;
+        }
+        
+        public String getSharedVerdict() {
+            return sharedVerdict;
+        }
+        
+        public void setSharedVerdict(String sharedVerdict) {
+            this.sharedVerdict = sharedVerdict;
+        }
+        
+        public String getThresholdCheck() {
+            return thresholdCheck;
+        }
+        
+        public void setThresholdCheck(String thresholdCheck) {
+            this.thresholdCheck = thresholdCheck;
+        }
+        
+        public String getAnomalyScreen() {
+            return anomalyScreen;
+        }
+        
+        public void setAnomalyScreen(String anomalyScreen) {
+            this.anomalyScreen = anomalyScreen;
+        }
     }
 }
@@ -0,0 +1,58 @@
+package com.eginnovations.support.pmr.model;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Structured KPI verdict returned by the LLM when a JSON schema is enforced
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class KPIVerdict {
+    
+    private String status; // "COMPLIANT", "NON-COMPLIANT", "NEEDS REVIEW"
+    private Double confidence; // 0.0 - 1.0
+    private List<String> reasons;
+    private List<String> keyDataPoints;
+    private String explanation; // Markdown
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+    
+    public Double getConfidence() {
+        return confidence;
+    }
+    
+    public void setConfidence(Double confidence) {
+        this.confidence = confidence;
+    }
+    
+    public List<String> getReasons() {
+        return reasons;
+    }
+    
+    public void setReasons(List<String> reasons) {
+        this.reasons = reasons;
+    }
+    
+    public List<String> getKeyDataPoints() {
+        return keyDataPoints;
+    }
+    
+    public void setKeyDataPoints(List<String> keyDataPoints) {
+        this.keyDataPoints = keyDataPoints;
+    }
+    
+    public String getExplanation() {
+        return explanation;
+    }
+    
+    public void setExplanation(String explanation) {
+        this.explanation = explanation;
+    }
+}
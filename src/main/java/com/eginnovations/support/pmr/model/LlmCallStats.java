@@ -0,0 +1,116 @@
+package com.eginnovations.support.pmr.model;
+
+/**
+ * Timings and token counts of one LLM call, as reported by the Ollama server.
+ * Durations are in nanoseconds; -1 means the server did not report the value
+ * (e.g. the stream was stopped before its final message).
+ */
+public class LlmCallStats {
+
+    private String tag;
+    private String model;
+    private String endpoint;
+    private String api;
+    private long wallMillis;
+    private long promptEvalCount = -1;
+    private long promptEvalDurationNanos = -1;
+    private long evalCount = -1;
+    private long evalDurationNanos = -1;
+    private long loadDurationNanos = -1;
+    private long totalDurationNanos = -1;
+
+    /**
+     * Whether the server reported its statistics for this call
+     */
+    public boolean isReported() {
+        return totalDurationNanos >= 0;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public void setTag(String tag) {
+        this.tag = tag;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public String getApi() {
+        return api;
+    }
+
+    public void setApi(String api) {
+        this.api = api;
+    }
+
+    public long getWallMillis() {
+        return wallMillis;
+    }
+
+    public void setWallMillis(long wallMillis) {
+        this.wallMillis = wallMillis;
+    }
+
+    public long getPromptEvalCount() {
+        return promptEvalCount;
+    }
+
+    public void setPromptEvalCount(long promptEvalCount) {
+        this.promptEvalCount = promptEvalCount;
+    }
+
+    public long getPromptEvalDurationNanos() {
+        return promptEvalDurationNanos;
+    }
+
+    public void setPromptEvalDurationNanos(long promptEvalDurationNanos) {
+        this.promptEvalDurationNanos = promptEvalDurationNanos;
+    }
+
+    public long getEvalCount() {
+        return evalCount;
+    }
+
+    public void setEvalCount(long evalCount) {
+        this.evalCount = evalCount;
+    }
+
+    public long getEvalDurationNanos() {
+        return evalDurationNanos;
+    }
+
+    public void setEvalDurationNanos(long evalDurationNanos) {
+        this.evalDurationNanos = evalDurationNanos;
+    }
+
+    public long getLoadDurationNanos() {
+        return loadDurationNanos;
+    }
+
+    public void setLoadDurationNanos(long loadDurationNanos) {
+        this.loadDurationNanos = loadDurationNanos;
+    }
+
+    public long getTotalDurationNanos() {
+        return totalDurationNanos;
+    }
+
+    public void setTotalDurationNanos(long totalDurationNanos) {
+        this.totalDurationNanos = totalDurationNanos;
+    }
+}
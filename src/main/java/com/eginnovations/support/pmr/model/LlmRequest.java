@@ -0,0 +1,104 @@
+package com.eginnovations.support.pmr.model;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * A single generation request sent to the LLM server
+ */
+public class LlmRequest {
+    
+    private String model; // overrides ollama.model, e.g. the triage model
+    private String system; // fixed instructions, identical across requests so the server can reuse its prompt cache
+    private String prompt;
+    private JsonNode format; // JSON schema the answer must follow, or null for free text
+    private Predicate<CharSequence> stopCondition; // checked on the text streamed so far; true ends generation
+    private String tag; // what the call is for, e.g. the zip entry name; used to tag telemetry
+    private int maxOutputTokens = -1; // generation budget (num_predict); -1 means unlimited
+    private List<String> stop = List.of(); // stop sequences passed to the server
+    
+    public LlmRequest() {
+    }
+    
+    public LlmRequest(String prompt) {
+        this.prompt = prompt;
+    }
+    
+    public LlmRequest(String system, String prompt) {
+        this.system = system;
+        this.prompt = prompt;
+    }
+    
+    public String getSystem() {
+        return system;
+    }
+    
+    public void setSystem(String system) {
+        this.system = system;
+    }
+    
+    /**
+     * System part followed by the variable part, as one prompt
+     */
+    public String getFullPrompt() {
+        return system == null ? prompt : system + "\n\n" + prompt;
+    }
+    
+    public String getPrompt() {
+        return prompt;
+    }
+    
+    public void setPrompt(String prompt) {
+        this.prompt = prompt;
+    }
+    
+    public JsonNode getFormat() {
+        return format;
+    }
+    
+    public void setFormat(JsonNode format) {
+        this.format = format;
+    }
+    
+    public Predicate<CharSequence> getStopCondition() {
+        return stopCondition;
+    }
+    
+    public void setStopCondition(Predicate<CharSequence> stopCondition) {
+        this.stopCondition = stopCondition;
+    }
+    
+    public String getTag() {
+        return tag;
+    }
+    
+    public void setTag(String tag) {
+        this.tag = tag;
+    }
+    
+    public int getMaxOutputTokens() {
+        return maxOutputTokens;
+    }
+    
+    public void setMaxOutputTokens(int maxOutputTokens) {
+        this.maxOutputTokens = maxOutputTokens;
+    }
+    
+    public List<String> getStop() {
+        return stop;
+    }
+    
+    public void setStop(List<String> stop) {
+        this.stop = stop;
+    }
+    
+    public String getModel() {
+        return model;
+    }
+    
+    public void setModel(String model) {
+        this.model = model;
+    }
+}
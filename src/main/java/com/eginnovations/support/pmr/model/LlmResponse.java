@@ -0,0 +1,44 @@
+package com.eginnovations.support.pmr.model;
+
+/**
+ * Result of an {@link LlmRequest}
+ */
+public class LlmResponse {
+    
+    private String text;
+    private boolean error; // text holds an HTML error/fallback message instead of generated output
+    private boolean stoppedEarly; // generation was cut off by the request's stop condition
+    private LlmCallStats stats;
+    
+    public String getText() {
+        return text;
+    }
+    
+    public void setText(String text) {
+        this.text = text;
+    }
+    
+    public boolean isError() {
+        return error;
+    }
+    
+    public void setError(boolean error) {
+        this.error = error;
+    }
+    
+    public boolean isStoppedEarly() {
+        return stoppedEarly;
+    }
+    
+    public void setStoppedEarly(boolean stoppedEarly) {
+        this.stoppedEarly = stoppedEarly;
+    }
+    
+    public LlmCallStats getStats() {
+        return stats;
+    }
+    
+    public void setStats(LlmCallStats stats) {
+        this.stats = stats;
+    }
+}
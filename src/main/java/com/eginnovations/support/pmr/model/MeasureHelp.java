@@ -1,5 +1,7 @@
 package com.eginnovations.support.pmr.model;
 
+import java.util.List;
+
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
@@ -21,6 +23,9 @@ public class MeasureHelp {
     @JsonProperty("Interpretation")
     private String interpretation;
     
+    @JsonProperty("troubleshootingSteps")
+    private List<String> troubleshootingSteps;
+    
     public String getMeasurement() {
         return measurement;
     }
@@ -52,4 +57,12 @@ public class MeasureHelp {
     public void setInterpretation(String interpretation) {
         this.interpretation = interpretation;
     }
+    
+    public List<String> getTroubleshootingSteps() {
+        return troubleshootingSteps;
+    }
+    
+    public void setTroubleshootingSteps(List<String> troubleshootingSteps) {
+        this.troubleshootingSteps = troubleshootingSteps;
+    }
 }
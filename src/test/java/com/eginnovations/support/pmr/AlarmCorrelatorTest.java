@@ -0,0 +1,61 @@
+package com.eginnovations.support.pmr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+import com.eginnovations.support.pmr.model.AlarmReportData;
+
+public class AlarmCorrelatorTest {
+
+    private static AlarmReportData alarm(String component, String layer, String startTime, String duration) {
+        AlarmReportData alarm = new AlarmReportData();
+        alarm.setComponentName(component);
+        alarm.setLayer(layer);
+        alarm.setStartTime(startTime);
+        alarm.setDuration(duration);
+        return alarm;
+    }
+
+    @Test
+    public void testOverlappingAlarmsOfOneComponentAndLayerAreGrouped() {
+        AlarmReportData disk = alarm("web1", "Operating System", "Feb 10, 2026 10:00", "40 mins");
+        AlarmReportData otherLayer = alarm("web1", "JVM", "Feb 10, 2026 10:05", "5 mins");
+        AlarmReportData swap = alarm("web1", "Operating System", "Feb 10, 2026 10:30", "2 mins");
+        AlarmReportData otherComponent = alarm("web2", "Operating System", "Feb 10, 2026 10:01", "10 mins");
+        // Starts 10 minutes after the group ends (10:40), within the 15 minute slack
+        AlarmReportData io = alarm("web1", "Operating System", "Feb 10, 2026 10:50", "1 hr 5 mins");
+        AlarmReportData later = alarm("web1", "Operating System", "Feb 10, 2026 13:00", "00:10:00");
+        AlarmReportData unparseable = alarm("web1", "Operating System", "N/A", "N/A");
+
+        List<List<AlarmReportData>> clusters = new AlarmCorrelator(Duration.ofMinutes(15), -1).cluster(
+                List.of(swap, disk, otherLayer, otherComponent, io, later, unparseable), Function.identity());
+
+        assertEquals(List.of(List.of(swap, disk, io), List.of(otherLayer), List.of(otherComponent), List.of(later),
+                List.of(unparseable)), clusters);
+    }
+
+    @Test
+    public void testGroupSizeIsCapped() {
+        List<AlarmReportData> alarms = List.of(
+                alarm("db1", "Database", "2026-02-10 10:00", "10 mins"),
+                alarm("db1", "Database", "2026-02-10 10:01", "10 mins"),
+                alarm("db1", "Database", "2026-02-10 10:02", "10 mins"));
+
+        List<List<AlarmReportData>> clusters = new AlarmCorrelator(Duration.ZERO, 2).cluster(alarms, Function.identity());
+
+        assertEquals(List.of(alarms.subList(0, 2), alarms.subList(2, 3)), clusters);
+    }
+
+    @Test
+    public void testDurations() {
+        assertEquals(Duration.ofMinutes(10), AlarmCorrelator.parseDuration("10 mins"));
+        assertEquals(Duration.ofDays(1).plusHours(2).plusMinutes(5), AlarmCorrelator.parseDuration("1 day 2 Hrs 5 Mins"));
+        assertEquals(Duration.ofMinutes(135).plusSeconds(7), AlarmCorrelator.parseDuration("02:15:07"));
+        assertEquals(Duration.ZERO, AlarmCorrelator.parseDuration("-"));
+    }
+}
@@ -0,0 +1,68 @@
+package com.eginnovations.support.pmr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class AlarmGroupRegistryTest {
+
+    @TempDir
+    Path dir;
+
+    private AlarmGroupRegistry registry() {
+        AlarmGroupRegistry registry = new AlarmGroupRegistry();
+        ReflectionTestUtils.setField(registry, "env", new MockEnvironment()
+                .withProperty("alarm.analysis.registry.file", dir.resolve("registry.json").toString()));
+        return registry;
+    }
+
+    @Test
+    public void testGroupIdAndFingerprintIgnoreWhatGrowsWhileOpen() {
+        assertEquals(AlarmGroupRegistry.groupId("web1|Disk", "Feb 10, 2026 10:00"),
+                AlarmGroupRegistry.groupId("web1|Disk", "Feb 10, 2026 10:00"));
+        assertNotEquals(AlarmGroupRegistry.groupId("web1|Disk", "Feb 10, 2026 10:00"),
+                AlarmGroupRegistry.groupId("web1|Disk", "Feb 11, 2026 10:00"));
+
+        AlarmGroupRegistry registry = registry();
+        String open = registry.fingerprint(Map.of("priority", "Major", "duration", "10 mins", "repeatCount", "1"));
+        assertEquals(open, registry.fingerprint(Map.of("priority", "Major", "duration", "3 hrs", "repeatCount", "7")));
+        assertNotEquals(open, registry.fingerprint(Map.of("priority", "Critical", "duration", "3 hrs")));
+    }
+
+    @Test
+    public void testAnalysisIsReusedAcrossRunsUntilTheAlarmChanges() {
+        AlarmGroupRegistry first = registry();
+        first.recordCollected("a", "fp-a");
+        first.recordCollected("b", "fp-b");
+        assertFalse(first.hasAnalysis("a", "fp-a"));
+        first.recordAnalysis(List.of("a"), List.of("fp-a"), "<p>disk</p>");
+        first.recordAnalysis(List.of("b", "c"), List.of("fp-b", "fp-c"), "<p>cluster</p>");
+        first.save();
+
+        AlarmGroupRegistry next = registry();
+        assertTrue(next.hasAnalysis("a", "fp-a"));
+        // Analyzed with correlated alarms only, so its data is still collected
+        assertFalse(next.hasAnalysis("b", "fp-b"));
+        AlarmGroupRegistry.Entry entry = next.findAnalysis(List.of("a"), List.of("fp-a"));
+        assertNotNull(entry);
+        assertEquals("<p>disk</p>", entry.getAnalysis());
+        // Correlated sets match in any order
+        assertEquals("<p>cluster</p>", next.findAnalysis(List.of("c", "b"), List.of("fp-c", "fp-b")).getAnalysis());
+
+        assertNull(next.findAnalysis(List.of("a"), List.of("fp-a2")));
+        assertNull(next.findAnalysis(List.of("b", "c"), List.of("fp-b", "fp-c2")));
+        assertNull(next.findAnalysis(List.of("b"), List.of("fp-b")));
+    }
+}
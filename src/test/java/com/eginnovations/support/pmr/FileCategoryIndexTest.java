@@ -0,0 +1,27 @@
+package com.eginnovations.support.pmr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+public class FileCategoryIndexTest {
+
+    @Test
+    public void testEntryIsMatchedOnFileNameSuffix() {
+        Properties mapping = new Properties();
+        mapping.setProperty("eG-Agents_Not-running-licensed-agents.json", "quality");
+        mapping.setProperty("Pool-utilization.json", "usage");
+        mapping.setProperty("eG-MultiThread-Pools_Pool-utilization.json", "capacity");
+        FileCategoryIndex index = new FileCategoryIndex(mapping);
+
+        assertEquals("quality", index.categoryOf("manager1/eG-Agents_Not-running-licensed-agents.json"));
+        assertEquals("quality", index.categoryOf("eG-Agents_Not-running-licensed-agents.json"));
+        assertEquals("capacity", index.categoryOf("manager1/eG-MultiThread-Pools_Pool-utilization.json"));
+        assertEquals("usage", index.categoryOf("manager1/Other_Pool-utilization.json"));
+        assertNull(index.categoryOf("eG-Agents_Not-running-licensed-agents.json/readme.txt"));
+        assertNull(index.categoryOf("manager1/.json"));
+    }
+}
@@ -0,0 +1,76 @@
+package com.eginnovations.support.pmr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.eginnovations.support.pmr.model.KPIComplianceResult;
+
+public class KpiPayloadStoreTest {
+
+    private static KPIComplianceResult result(String rawData, String diagnosisData) {
+        KPIComplianceResult result = new KPIComplianceResult();
+        result.setEntryName("manager1/eG-Agents_Not-running-licensed-agents.json");
+        result.setRawData(rawData);
+        result.setDiagnosisData(diagnosisData);
+        return result;
+    }
+
+    @Test
+    public void testSpilledPayloadsAreReadBack() {
+        KpiPayloadStore store = KpiPayloadStore.open("spill");
+        KPIComplianceResult first = result("{\"series\":[1,2,3]}", "{\"agent\":\"ünïcode\"}");
+        KPIComplianceResult second = result("{\"series\":[4]}", null);
+        store.release(first);
+        store.release(second);
+
+        assertTrue(first.isPayloadDetached());
+        assertEquals("{\"series\":[1,2,3]}", first.getRawData());
+        assertEquals("{\"agent\":\"ünïcode\"}", first.getDiagnosisData());
+        assertEquals("{\"series\":[4]}", second.getRawData());
+        assertNull(second.getDiagnosisData());
+    }
+
+    @Test
+    public void testPayloadSetAfterReleaseIsReleasedAgain() {
+        KpiPayloadStore store = KpiPayloadStore.open("spill");
+        KPIComplianceResult result = result("{\"series\":[1]}", "{\"agent\":\"a\"}");
+        store.release(result);
+
+        result.setRawData("{\"series\":[2]}");
+        assertFalse(result.isPayloadDetached());
+        assertEquals("{\"series\":[2]}", result.getRawData());
+        assertEquals("{\"agent\":\"a\"}", result.getDiagnosisData());
+
+        store.release(result);
+        assertTrue(result.isPayloadDetached());
+        assertEquals("{\"series\":[2]}", result.getRawData());
+        assertEquals("{\"agent\":\"a\"}", result.getDiagnosisData());
+    }
+
+    @Test
+    public void testDropAndKeep() {
+        KPIComplianceResult dropped = result("{}", "{}");
+        KpiPayloadStore.open("drop").release(dropped);
+        assertNull(dropped.getRawData());
+        assertNull(dropped.getDiagnosisData());
+
+        KPIComplianceResult kept = result("{}", "{}");
+        KpiPayloadStore.open("keep").release(kept);
+        assertEquals("{}", kept.getRawData());
+    }
+
+    @Test
+    public void testSharedPayloadFollowsItsRepresentative() {
+        KpiPayloadStore store = KpiPayloadStore.open("spill");
+        KPIComplianceResult representative = result("{\"series\":[0,0]}", "{}");
+        KPIComplianceResult member = result("{\"series\":[0,0]}", "{}");
+        member.detachPayloads(representative::getRawData, representative::getDiagnosisData);
+        store.release(representative);
+        store.release(member);
+        assertEquals("{\"series\":[0,0]}", member.getRawData());
+    }
+}
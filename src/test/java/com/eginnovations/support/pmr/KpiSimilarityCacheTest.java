@@ -0,0 +1,119 @@
+package com.eginnovations.support.pmr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.eginnovations.support.pmr.model.HistoricalDataRoot;
+import com.eginnovations.support.pmr.model.KPIComplianceResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class KpiSimilarityCacheTest {
+
+    private static final String FLAT = "[{\"time\":\"t1\",\"value\":\"0\"},{\"time\":\"t2\",\"value\":\"0\"},{\"time\":\"t3\",\"value\":\"0\"}]";
+    private static final String RISING = "[{\"time\":\"t1\",\"value\":\"12\"},{\"time\":\"t2\",\"value\":\"57\"},{\"time\":\"t3\",\"value\":\"98.5\"}]";
+
+    private static StubOllamaServer stub;
+
+    @BeforeAll
+    static void startStub() throws IOException {
+        stub = StubOllamaServer.start(1);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        stub.close();
+    }
+
+    private KpiSimilarityCache cache(boolean audit) {
+        KpiSimilarityCache cache = new KpiSimilarityCache();
+        ReflectionTestUtils.setField(cache, "env", new MockEnvironment()
+                .withProperty("prepare.report.preventive.maintenance.similarity.cache.enabled", "true")
+                .withProperty("prepare.report.preventive.maintenance.similarity.cache.audit", String.valueOf(audit))
+                .withProperty("llm.embedding.url", stub.getEmbedUrl()));
+        return cache;
+    }
+
+    private static KPIComplianceResult kpi(String component) {
+        KPIComplianceResult result = new KPIComplianceResult();
+        result.setEntryName(component + "/eG-Agents_Not-running-licensed-agents.json");
+        result.setComponentName(component);
+        result.setComponentType("eG Manager");
+        result.setTest("eG Agents");
+        result.setMeasure("Not running licensed agents");
+        return result;
+    }
+
+    private static HistoricalDataRoot.HistoricalDataContent data(String series) throws IOException {
+        return new ObjectMapper().readValue("{\"historicalData\":{\"Not running licensed agents\":" + series + "}}",
+                HistoricalDataRoot.HistoricalDataContent.class);
+    }
+
+    private static void analyzed(KPIComplianceResult result, String status) {
+        result.setComplianceStatus(status);
+        result.setCompliant("COMPLIANT".equals(status));
+        result.setAiAnalysis("STATUS: " + status + "\n\nREASON: test");
+        result.setDecidedBy("stub");
+    }
+
+    @Test
+    public void testNearIdenticalKpiReusesVerdict() throws IOException {
+        KpiSimilarityCache cache = cache(false);
+        KPIComplianceResult first = kpi("manager1");
+        KpiSimilarityCache.Lookup firstLookup = cache.lookup(first, data(FLAT));
+        assertNotNull(firstLookup);
+        assertFalse(firstLookup.reuse(first));
+        analyzed(first, "COMPLIANT");
+        firstLookup.store(first, false);
+
+        KPIComplianceResult second = kpi("manager2");
+        assertTrue(cache.lookup(second, data(FLAT)).reuse(second));
+        assertEquals("COMPLIANT", second.getComplianceStatus());
+        assertTrue(second.isCompliant());
+        assertTrue(second.getReusedFrom().startsWith("manager1 "));
+
+        KPIComplianceResult different = kpi("manager3");
+        assertFalse(cache.lookup(different, data(RISING)).reuse(different));
+        assertNull(different.getReusedFrom());
+    }
+
+    @Test
+    public void testFailedAnalysisIsNotReused() throws IOException {
+        KpiSimilarityCache cache = cache(false);
+        KPIComplianceResult first = kpi("manager1");
+        KpiSimilarityCache.Lookup firstLookup = cache.lookup(first, data(FLAT));
+        analyzed(first, "NEEDS REVIEW");
+        firstLookup.store(first, true);
+
+        KPIComplianceResult second = kpi("manager2");
+        assertFalse(cache.lookup(second, data(FLAT)).reuse(second));
+        assertNull(second.getReusedFrom());
+    }
+
+    @Test
+    public void testAuditModeAnalyzesEveryKpi() throws IOException {
+        KpiSimilarityCache cache = cache(true);
+        KPIComplianceResult first = kpi("manager1");
+        KpiSimilarityCache.Lookup firstLookup = cache.lookup(first, data(FLAT));
+        analyzed(first, "COMPLIANT");
+        firstLookup.store(first, false);
+
+        KPIComplianceResult second = kpi("manager2");
+        KpiSimilarityCache.Lookup secondLookup = cache.lookup(second, data(FLAT));
+        assertFalse(secondLookup.reuse(second));
+        assertNull(second.getComplianceStatus());
+        analyzed(second, "COMPLIANT");
+        secondLookup.store(second, false);
+        cache.logStats();
+    }
+}
@@ -0,0 +1,144 @@
+package com.eginnovations.support.pmr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.eginnovations.support.pmr.model.KPIVerdict;
+import com.eginnovations.support.pmr.model.LlmCallStats;
+import com.eginnovations.support.pmr.model.LlmRequest;
+import com.eginnovations.support.pmr.model.LlmResponse;
+
+/**
+ * Runs the same contract and throughput checks against every {@link LlmClient} backend, each talking to
+ * {@link StubOllamaServer} through its own API.
+ */
+@SpringBootTest(properties = "ollama.endpoint.health.check.interval.seconds=0")
+public class LlmClientConformanceTest {
+
+    private static StubOllamaServer stub;
+
+    @Autowired
+    private LlmClient llmClient;
+
+    @Autowired
+    private OllamaService ollamaService;
+
+    @Autowired
+    private OpenAiCompatibleService openAiCompatibleService;
+
+    @Autowired
+    private LlmTelemetry llmTelemetry;
+
+    @DynamicPropertySource
+    static void llmProperties(DynamicPropertyRegistry registry) throws IOException {
+        stub = StubOllamaServer.start(7).latencyMillis(20, 0.3).tokensPerSecond(2000);
+        registry.add("ollama.api.url", stub::getUrl);
+        registry.add("llm.openai.api.url", stub::getOpenAiUrl);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        stub.close();
+    }
+
+    private LlmClient client(String backend) {
+        return "openai".equals(backend) ? openAiCompatibleService : ollamaService;
+    }
+
+    @Test
+    public void testOllamaIsTheDefaultBackend() {
+        assertSame(ollamaService, llmClient);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ollama", "openai"})
+    public void testTextAnswerWithStatistics(String backend) {
+        LlmRequest request = new LlmRequest("Answer with STATUS: and REASON:", "KPI INFORMATION:\nMeasure: m\n");
+        request.setTag("conformance-" + backend);
+        LlmResponse response = client(backend).generate(request);
+
+        assertFalse(response.isError(), response.getText());
+        assertTrue(response.getText().startsWith("STATUS: "));
+        assertFalse(response.isStoppedEarly());
+        LlmCallStats stats = llmTelemetry.takeCall(request.getTag());
+        assertNotNull(stats);
+        assertTrue(stats.isReported());
+        assertTrue(stats.getPromptEvalCount() > 0);
+        assertTrue(stats.getEvalCount() > 0);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ollama", "openai"})
+    public void testStopConditionEndsTheStream(String backend) {
+        LlmRequest request = new LlmRequest("Answer with STATUS: and REASON:", "KPI INFORMATION:\n");
+        request.setStopCondition(text -> text.toString().contains("\n"));
+        LlmResponse response = client(backend).generate(request);
+
+        assertFalse(response.isError(), response.getText());
+        assertTrue(response.isStoppedEarly());
+        assertTrue(response.getText().startsWith("STATUS: "));
+        assertFalse(response.getText().contains("REASON:"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ollama", "openai"})
+    public void testVerdict(String backend) {
+        KPIVerdict verdict = client(backend).generateVerdict(new LlmRequest("Answer with a JSON verdict", "KPI INFORMATION:\n"));
+        assertNotNull(verdict);
+        assertNotNull(verdict.getStatus());
+        assertEquals(0.9, verdict.getConfidence());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ollama", "openai"})
+    public void testFailuresAreReturnedAsErrorResponses(String backend) {
+        stub.errorRate(1.0);
+        try {
+            LlmResponse response = client(backend).generate(new LlmRequest("prompt"));
+            assertTrue(response.isError());
+            assertTrue(response.getText().contains("AI Analysis Error"));
+        } finally {
+            stub.errorRate(0);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ollama", "openai"})
+    public void testThroughput(String backend) throws Exception {
+        int requestCount = 64;
+        LlmClient client = client(backend);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        long start = System.currentTimeMillis();
+        List<Future<LlmResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < requestCount; i++) {
+            String prompt = "KPI INFORMATION:\nMeasure: m" + i + "\n";
+            futures.add(pool.submit(() -> client.generate(new LlmRequest("Answer with STATUS: and REASON:", prompt))));
+        }
+        for (Future<LlmResponse> future : futures) {
+            assertFalse(future.get().isError());
+        }
+        pool.shutdown();
+        long elapsed = System.currentTimeMillis() - start;
+        System.out.printf("%s backend: %d requests in %d ms (%.1f req/s)%n",
+                backend, requestCount, elapsed, requestCount * 1000.0 / elapsed);
+    }
+}
@@ -0,0 +1,48 @@
+package com.eginnovations.support.pmr;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MeasureHelpBundleCompilerTest {
+
+    @TempDir
+    Path dir;
+
+    private Path helpDir(String fileName, String content) throws IOException {
+        Path helpDir = Files.createDirectories(dir.resolve("eghelp"));
+        Files.writeString(helpDir.resolve("Good Test.json"),
+                "[{\"Measurement\": \"Good\", \"MeasurementUnit\": \"Number\", \"Interpretation\": \"fine\"}]");
+        Files.writeString(helpDir.resolve(fileName), content);
+        return helpDir;
+    }
+
+    @Test
+    public void testValidHelpIsCompiled() throws IOException {
+        Path bundle = dir.resolve("out/eghelp-bundle.json");
+        new MeasureHelpBundleCompiler().compile(helpDir("Other.json",
+                "[{\"measurement\": \"Other\", \"unit\": null, \"troubleshootingSteps\": \"none\"}]"), bundle);
+        String compiled = Files.readString(bundle);
+        assertTrue(compiled.contains("\"good test\":{\"good\":"));
+        assertFalse(compiled.contains("none"));
+    }
+
+    @Test
+    public void testMalformedHelpFailsTheBuild() throws IOException {
+        assertThrows(IllegalStateException.class, () -> new MeasureHelpBundleCompiler().compile(
+                helpDir("Truncated.json", "[{\"Measurement\": \"Cut off"), dir.resolve("a.json")));
+        assertThrows(IllegalStateException.class, () -> new MeasureHelpBundleCompiler().compile(
+                helpDir("Trailing.json", "[{\"Measurement\": \"X\"}]```"), dir.resolve("b.json")));
+        assertThrows(IllegalStateException.class, () -> new MeasureHelpBundleCompiler().compile(
+                helpDir("Duplicate.json", "[{\"Measurement\": \"X\"}, {\"measurement\": \" x \"}]"), dir.resolve("c.json")));
+        assertThrows(IllegalStateException.class, () -> new MeasureHelpBundleCompiler().compile(
+                helpDir("Nameless.json", "[{\"Description\": \"no measurement\"}]"), dir.resolve("d.json")));
+    }
+}
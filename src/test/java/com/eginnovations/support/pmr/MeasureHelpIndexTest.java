@@ -0,0 +1,45 @@
+package com.eginnovations.support.pmr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.eginnovations.support.pmr.model.MeasureHelp;
+
+public class MeasureHelpIndexTest {
+
+    private final MeasureHelpIndex index = new MeasureHelpIndex();
+
+    @Test
+    public void testLookupIgnoresCaseAndKeyVariants() {
+        MeasureHelp agents = index.find("eG Agents", "  not RUNNING licensed agents ");
+        assertNotNull(agents);
+        assertEquals("Not running licensed agents", agents.getMeasurement());
+        assertEquals("Number", agents.getMeasurementUnit());
+        assertTrue(agents.getInterpretation().startsWith("An agent that is not running"));
+
+        MeasureHelp browsers = index.find("browsers", "Total Page views");
+        assertNotNull(browsers);
+        assertEquals("Number", browsers.getMeasurementUnit());
+        assertNotNull(browsers.getDescription());
+    }
+
+    @Test
+    public void testStructuredInterpretationIsFlattened() {
+        MeasureHelp restarted = index.find("JVM Uptime", "Has the JVM been restarted?");
+        assertNotNull(restarted);
+        assertTrue(restarted.getInterpretation().endsWith("Measure values: Yes = 1, No = 0."));
+    }
+
+    @Test
+    public void testUnknownTestAndMeasure() {
+        assertFalse(index.hasTest("No Such Test"));
+        assertNull(index.find("No Such Test", "Licensed agents"));
+        assertTrue(index.hasTest("eG Agents"));
+        assertNull(index.find("eG Agents", "No such measure"));
+    }
+}
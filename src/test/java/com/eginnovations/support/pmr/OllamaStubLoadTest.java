@@ -0,0 +1,419 @@
+package com.eginnovations.support.pmr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.reset;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import com.eginnovations.support.pmr.model.KPIComplianceResult;
+import com.eginnovations.support.pmr.model.KPIVerdict;
+import com.eginnovations.support.pmr.model.LlmRequest;
+import com.eginnovations.support.pmr.model.LlmResponse;
+
+/**
+ * End-to-end load tests of the analysis pipeline against {@link StubOllamaServer}.
+ * Prints throughput figures; the stub is seeded so runs on the same machine are comparable.
+ */
+@SpringBootTest(properties = {
+    "ollama.endpoint.health.check.interval.seconds=0",
+    "prepare.report.preventive.maintenance.thread.pool.size=8",
+    "prepare.report.alarm.analysis.thread.pool.size=4",
+    "alarm.analysis.registry.file=target/stub-alarm-registry.json",
+    "prepare.report.preventive.maintenance.threshold.check.decide=true",
+    "prepare.report.preventive.maintenance.anomaly.screen.decide=true"
+})
+public class OllamaStubLoadTest {
+
+    private static final String TEST = "eG Agents";
+    private static final String MEASURE = "Not running licensed agents";
+
+    private static StubOllamaServer stub;
+
+    @Autowired
+    private OllamaService ollamaService;
+
+    @Autowired
+    private PreventiveMaintenanceService preventiveMaintenanceService;
+
+    @Autowired
+    private AlarmAnalysisReportService alarmAnalysisReportService;
+
+    @Autowired
+    private AlarmGroupRegistry alarmGroupRegistry;
+
+    @MockitoSpyBean
+    private KpiSimilarityCache similarityCache;
+
+    @DynamicPropertySource
+    static void ollamaProperties(DynamicPropertyRegistry registry) throws IOException {
+        stub = StubOllamaServer.start(42).latencyMillis(20, 0.3).tokensPerSecond(2000);
+        registry.add("ollama.api.url", stub::getUrl);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        int requestCount = 64;
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        long start = System.currentTimeMillis();
+        List<Future<LlmResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < requestCount; i++) {
+            String prompt = "KPI INFORMATION:\nMeasure: m" + i + "\n";
+            futures.add(pool.submit(() -> ollamaService.generate(new LlmRequest("Answer with STATUS: and REASON:", prompt))));
+        }
+        for (Future<LlmResponse> future : futures) {
+            LlmResponse response = future.get();
+            assertFalse(response.isError(), response.getText());
+            assertTrue(response.getText().startsWith("STATUS: "));
+        }
+        pool.shutdown();
+        long elapsed = System.currentTimeMillis() - start;
+        System.out.printf("Stub load: %d requests in %d ms (%.1f req/s), max %d in flight%n",
+                requestCount, elapsed, requestCount * 1000.0 / elapsed, stub.getMaxInFlight());
+    }
+
+    @Test
+    public void testStreamedVerdict() {
+        KPIVerdict verdict = ollamaService.generateVerdict(new LlmRequest("Answer with a JSON verdict", "KPI INFORMATION:\n"));
+        assertNotNull(verdict);
+        assertNotNull(verdict.getStatus());
+        assertEquals(0.9, verdict.getConfidence());
+    }
+
+    @Test
+    public void testFailuresAreReturnedAsErrorResponses() {
+        stub.errorRate(1.0);
+        try {
+            LlmResponse response = ollamaService.generate(new LlmRequest("prompt"));
+            assertTrue(response.isError());
+        } finally {
+            stub.errorRate(0);
+        }
+    }
+
+    /**
+     * Writes a PM zip with one KPI per component; the value of component i is i, or 0 for all when identical
+     */
+    private static File writeKpiZip(Path dir, int kpiCount, boolean identical) throws IOException {
+        File zipFile = dir.resolve("eg_preventive_maintenance_stub.zip").toFile();
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(zipFile))) {
+            for (int i = 0; i < kpiCount; i++) {
+                zip.putNextEntry(new ZipEntry("manager" + i + "/eG-Agents_Not-running-licensed-agents.json"));
+                String json = "{\"historicalData\":{\"metaData\":{\"componentType\":\"eG Manager\",\"measure\":\"" + MEASURE
+                        + "\",\"test\":\"" + TEST + "\",\"timeline\":\"1 week\",\"componentName\":\"manager" + i + "\"},"
+                        + "\"historicalData\":{\"" + MEASURE + "\":[{\"time\":\"2026-01-01 00:00\",\"value\":\""
+                        + (identical ? 0 : i) + "\"}]}}}";
+                zip.write(json.getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return zipFile;
+    }
+
+    /**
+     * One PM zip entry whose series has the given values, five minutes apart
+     */
+    private static String kpiEntry(String test, String measure, String thresholdData, int... values) {
+        StringBuilder points = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            points.append(i == 0 ? "" : ",").append(String.format("{\"time\":\"2026-01-01 %02d:%02d\",\"value\":\"%d\"}",
+                    i / 12, i % 12 * 5, values[i]));
+        }
+        return "{\"historicalData\":{\"metaData\":{\"componentType\":\"eG Manager\",\"measure\":\"" + measure
+                + "\",\"test\":\"" + test + "\",\"timeline\":\"1 day\",\"componentName\":\"manager\"},"
+                + "\"historicalData\":{\"" + measure + "\":[" + points + "]}"
+                + (thresholdData == null ? "" : ",\"diagnosisData\":{\"thresholdData\":" + thresholdData + "}") + "}}";
+    }
+
+    private static File writeZip(Path dir, String... namesAndEntries) throws IOException {
+        File zipFile = dir.resolve("eg_preventive_maintenance_rules.zip").toFile();
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(zipFile))) {
+            for (int i = 0; i < namesAndEntries.length; i += 2) {
+                zip.putNextEntry(new ZipEntry("manager/" + namesAndEntries[i]));
+                zip.write(namesAndEntries[i + 1].getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return zipFile;
+    }
+
+    @Test
+    public void testErrorCountsWithinThresholdsStillGoToTheModel(@TempDir Path dir) throws Exception {
+        int[] errors = new int[12];
+        Arrays.fill(errors, 3);
+        int[] utilization = {40, 42, 41, 40, 43, 42, 40, 41, 42, 40, 41, 43};
+        File zipFile = writeZip(dir,
+                "Application-Event-Log_Application-errors.json",
+                kpiEntry("Application Event Log", "Application errors", "{\"maxThreshold\":\"Critical:10\"}", errors),
+                "eG-MultiThread-Pools_Pool-utilization.json",
+                kpiEntry("eG MultiThread Pools", "Pool utilization", "{\"maxThreshold\":\"Critical:90\"}", utilization));
+        long requestsBefore = stub.getRequestCount();
+
+        List<KPIComplianceResult> results = preventiveMaintenanceService.processZipFile(zipFile);
+
+        assertEquals(1, stub.getRequestCount() - requestsBefore);
+        assertEquals(2, results.size());
+        assertNotEquals("threshold check", results.get(0).getDecidedBy());
+        assertEquals("threshold check", results.get(1).getDecidedBy());
+        assertEquals("COMPLIANT", results.get(1).getComplianceStatus());
+    }
+
+    @Test
+    public void testSteadySeriesWithoutThresholdsGoToTheModel(@TempDir Path dir) throws Exception {
+        int[] errors = new int[12];
+        Arrays.fill(errors, 3);
+        int[] utilization = new int[12];
+        Arrays.fill(utilization, 99);
+        File zipFile = writeZip(dir,
+                "Application-Event-Log_Application-errors.json",
+                kpiEntry("Application Event Log", "Application errors", null, errors),
+                "eG-MultiThread-Pools_Pool-utilization.json",
+                kpiEntry("eG MultiThread Pools", "Pool utilization", null, utilization));
+        long requestsBefore = stub.getRequestCount();
+
+        List<KPIComplianceResult> results = preventiveMaintenanceService.processZipFile(zipFile);
+
+        assertEquals(2, stub.getRequestCount() - requestsBefore);
+        for (KPIComplianceResult result : results) {
+            assertTrue(result.getAnomalyScreen().endsWith("no anomalies."), result.getAnomalyScreen());
+            assertFalse(String.valueOf(result.getDecidedBy()).contains("anomaly screen"));
+        }
+    }
+
+    @Test
+    public void testProcessZipFile(@TempDir Path dir) throws Exception {
+        int kpiCount = 40;
+        File zipFile = writeKpiZip(dir, kpiCount, false);
+
+        long start = System.currentTimeMillis();
+        List<KPIComplianceResult> results = preventiveMaintenanceService.processZipFile(zipFile);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(kpiCount, results.size());
+        for (int i = 0; i < kpiCount; i++) {
+            assertNotNull(results.get(i).getComplianceStatus());
+            assertEquals("manager" + i, results.get(i).getComponentName());
+        }
+        System.out.printf("Stub load: %d KPIs in %d ms (%.1f KPI/s)%n", kpiCount, elapsed, kpiCount * 1000.0 / elapsed);
+    }
+
+    @Test
+    public void testIdenticalKpisAreAnalyzedOnce(@TempDir Path dir) throws Exception {
+        int kpiCount = 12;
+        File zipFile = writeKpiZip(dir, kpiCount, true);
+        long requestsBefore = stub.getRequestCount();
+
+        List<KPIComplianceResult> results = preventiveMaintenanceService.processZipFile(zipFile);
+
+        assertEquals(1, stub.getRequestCount() - requestsBefore);
+        assertEquals(kpiCount, results.size());
+        String status = results.get(0).getComplianceStatus();
+        for (KPIComplianceResult result : results) {
+            assertEquals(status, result.getComplianceStatus());
+            assertEquals("Shared verdict (" + kpiCount + " components)", result.getSharedVerdict());
+        }
+    }
+
+    @Test
+    public void testFailedRepresentativeLeavesIdenticalKpisToTheirOwnAnalysis(@TempDir Path dir) throws Exception {
+        int kpiCount = 6;
+        File zipFile = writeKpiZip(dir, kpiCount, true);
+        long requestsBefore = stub.getRequestCount();
+        // Only the representative is analyzed first, so it is the one that fails
+        doThrow(new IllegalStateException("stub failure")).doCallRealMethod()
+                .when(similarityCache).lookup(any(), any());
+        List<KPIComplianceResult> results;
+        try {
+            results = preventiveMaintenanceService.processZipFile(zipFile);
+        } finally {
+            reset(similarityCache);
+        }
+
+        assertEquals(kpiCount - 1, stub.getRequestCount() - requestsBefore);
+        assertEquals(kpiCount - 1, results.size());
+        for (KPIComplianceResult result : results) {
+            assertNotNull(result.getComplianceStatus());
+            assertNotNull(result.getAiAnalysis());
+            assertNull(result.getSharedVerdict());
+        }
+    }
+
+    @Test
+    public void testAlarmReport() throws Exception {
+        int alarmCount = 20;
+        // generateHtmlReports works on the current directory
+        File zipFile = new File("alarm_analysis_stubloadtest.zip");
+        File htmlFile = new File("alarm_analysis_stubloadtest.html");
+        String[] priorities = {"Critical", "Major", "Minor", "Warning"};
+        try {
+            try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(zipFile))) {
+                for (int i = 0; i < alarmCount; i++) {
+                    zip.putNextEntry(new ZipEntry("alarm" + i + ".json"));
+                    String json = "{\"representativeAlert\":{\"componentName\":\"manager" + i + "\",\"componentType\":\"eG Manager\","
+                            + "\"test\":\"" + TEST + "\",\"measure\":\"" + MEASURE + "\",\"priority\":\"" + priorities[i % 4] + "\","
+                            + "\"layer\":\"eG Server\",\"description\":\"2 agents not running\",\"startTime\":\"2026-01-01 00:00\","
+                            + "\"duration\":\"10 mins\",\"repeatCount\":" + (i + 1) + "}}";
+                    zip.write(json.getBytes(StandardCharsets.UTF_8));
+                    zip.closeEntry();
+                }
+            }
+
+            long start = System.currentTimeMillis();
+            alarmAnalysisReportService.generateHtmlReports();
+            long elapsed = System.currentTimeMillis() - start;
+
+            assertTrue(htmlFile.exists());
+            assertTrue(Files.readString(htmlFile.toPath()).contains("Remediation Steps"));
+            System.out.printf("Stub load: %d alarms in %d ms (%.1f alarms/s)%n", alarmCount, elapsed, alarmCount * 1000.0 / elapsed);
+        } finally {
+            zipFile.delete();
+            htmlFile.delete();
+        }
+    }
+
+    @Test
+    public void testCorrelatedAlarmsAreAnalyzedTogether() throws Exception {
+        File zipFile = new File("alarm_analysis_stubcorrelationtest.zip");
+        File htmlFile = new File("alarm_analysis_stubcorrelationtest.html");
+        String[][] alarms = {
+            {"manager1", "2026-01-01 10:00", "30 mins"},
+            {"manager1", "2026-01-01 10:10", "5 mins"},
+            {"manager1", "2026-01-01 10:35", "5 mins"},
+            {"manager2", "2026-01-01 10:00", "30 mins"},
+        };
+        try {
+            try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(zipFile))) {
+                for (int i = 0; i < alarms.length; i++) {
+                    zip.putNextEntry(new ZipEntry("correlated" + i + ".json"));
+                    String json = "{\"representativeAlert\":{\"componentName\":\"" + alarms[i][0] + "\",\"componentType\":\"eG Manager\","
+                            + "\"test\":\"" + TEST + "\",\"measure\":\"" + MEASURE + "\",\"priority\":\"Major\","
+                            + "\"layer\":\"eG Server\",\"description\":\"2 agents not running\",\"startTime\":\"" + alarms[i][1] + "\","
+                            + "\"duration\":\"" + alarms[i][2] + "\"}}";
+                    zip.write(json.getBytes(StandardCharsets.UTF_8));
+                    zip.closeEntry();
+                }
+            }
+
+            long requestsBefore = stub.getRequestCount();
+            alarmAnalysisReportService.generateHtmlReports();
+
+            // One prompt for the three overlapping manager1 alarms, one for manager2
+            assertEquals(2, stub.getRequestCount() - requestsBefore);
+            String html = Files.readString(htmlFile.toPath());
+            assertTrue(html.contains("Consolidated analysis of 3 correlated alarms on manager1, layer eG Server"));
+            assertEquals(2, html.split("consolidated analysis</a>", -1).length - 1);
+        } finally {
+            zipFile.delete();
+            htmlFile.delete();
+        }
+    }
+
+    @Test
+    public void testOnlySuccessfulAlarmAnalysesAreReused() throws Exception {
+        File zipFile = new File("alarm_analysis_stubreusetest.zip");
+        File htmlFile = new File("alarm_analysis_stubreusetest.html");
+        // The registry file outlives the test run, so each run uses new groups
+        List<String> groupIds = List.of(UUID.randomUUID().toString());
+        List<String> fingerprints = List.of("fingerprint");
+        try {
+            try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(zipFile))) {
+                zip.putNextEntry(new ZipEntry("reused.json"));
+                String json = "{\"groupId\":\"" + groupIds.get(0) + "\",\"fingerprint\":\"fingerprint\","
+                        + "\"representativeAlert\":{\"componentName\":\"manager1\",\"componentType\":\"eG Manager\","
+                        + "\"test\":\"" + TEST + "\",\"measure\":\"" + MEASURE + "\",\"priority\":\"Major\","
+                        + "\"layer\":\"eG Server\",\"description\":\"2 agents not running\",\"startTime\":\"2026-01-01 10:00\","
+                        + "\"duration\":\"10 mins\"}}";
+                zip.write(json.getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+
+            stub.errorRate(1.0);
+            try {
+                alarmAnalysisReportService.generateHtmlReports();
+            } finally {
+                stub.errorRate(0);
+            }
+            assertNull(alarmGroupRegistry.findAnalysis(groupIds, fingerprints));
+
+            alarmAnalysisReportService.generateHtmlReports();
+            assertNotNull(alarmGroupRegistry.findAnalysis(groupIds, fingerprints));
+
+            long requestsBefore = stub.getRequestCount();
+            alarmAnalysisReportService.generateHtmlReports();
+            assertEquals(0, stub.getRequestCount() - requestsBefore);
+            assertTrue(Files.readString(htmlFile.toPath()).contains("Unchanged since"));
+        } finally {
+            zipFile.delete();
+            htmlFile.delete();
+        }
+    }
+
+    @Test
+    public void testUnchangedAlarmsAreNotCorrelated() throws Exception {
+        File zipFile = new File("alarm_analysis_stubunchangedtest.zip");
+        File htmlFile = new File("alarm_analysis_stubunchangedtest.html");
+        String unchangedId = UUID.randomUUID().toString();
+        alarmGroupRegistry.recordAnalysis(List.of(unchangedId), List.of("fingerprint"), "<p>Earlier analysis</p>");
+        try {
+            try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(zipFile))) {
+                for (int i = 0; i < 2; i++) {
+                    zip.putNextEntry(new ZipEntry("overlapping" + i + ".json"));
+                    String json = "{\"groupId\":\"" + (i == 0 ? unchangedId : UUID.randomUUID()) + "\",\"fingerprint\":\"fingerprint\","
+                            + (i == 0 ? "\"unchanged\":true," : "")
+                            + "\"representativeAlert\":{\"componentName\":\"manager1\",\"componentType\":\"eG Manager\","
+                            + "\"test\":\"" + TEST + "\",\"measure\":\"" + MEASURE + "\",\"priority\":\"Major\","
+                            + "\"layer\":\"eG Server\",\"description\":\"2 agents not running\",\"startTime\":\"2026-01-01 10:0" + i + "\","
+                            + "\"duration\":\"30 mins\"}}";
+                    zip.write(json.getBytes(StandardCharsets.UTF_8));
+                    zip.closeEntry();
+                }
+            }
+
+            long requestsBefore = stub.getRequestCount();
+            alarmAnalysisReportService.generateHtmlReports();
+
+            // The unchanged alarm keeps its own analysis, only the other one is sent
+            assertEquals(1, stub.getRequestCount() - requestsBefore);
+            String html = Files.readString(htmlFile.toPath());
+            assertTrue(html.contains("Earlier analysis"));
+            assertFalse(html.contains("Consolidated analysis of"));
+        } finally {
+            zipFile.delete();
+            htmlFile.delete();
+        }
+    }
+}
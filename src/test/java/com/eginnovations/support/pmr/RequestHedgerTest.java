@@ -0,0 +1,126 @@
+package com.eginnovations.support.pmr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.eginnovations.support.pmr.model.LlmResponse;
+
+public class RequestHedgerTest {
+
+    @Test
+    public void testSlowRequestIsHedgedAndCancelled() {
+        RequestHedger hedger = new RequestHedger();
+        ReflectionTestUtils.setField(hedger, "env", new MockEnvironment()
+                .withProperty("ollama.hedge.enabled", "true")
+                .withProperty("ollama.hedge.min.samples", "5"));
+        for (int i = 0; i < 5; i++) {
+            assertEquals("fast", hedger.execute(attempt -> answer(attempt, 10, "fast")).getText());
+        }
+
+        AtomicInteger calls = new AtomicInteger();
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+        LlmResponse response = hedger.execute(attempt -> {
+            if (calls.incrementAndGet() == 1) {
+                LlmResponse slow = answer(attempt, 2000, "slow");
+                primaryCancelled.set(attempt.isCancelled());
+                return slow;
+            }
+            return answer(attempt, 10, "hedge");
+        });
+        assertEquals("hedge", response.getText());
+        assertEquals(2, calls.get());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!primaryCancelled.get() && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertTrue(primaryCancelled.get(), "the slow primary request should be cancelled");
+        hedger.destroy();
+    }
+
+    @Test
+    public void testLostHedgeNeverTakesPermit() throws Exception {
+        RequestHedger hedger = new RequestHedger();
+        ReflectionTestUtils.setField(hedger, "env", new MockEnvironment()
+                .withProperty("ollama.hedge.enabled", "true")
+                .withProperty("ollama.hedge.min.samples", "5"));
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        ReflectionTestUtils.setField(limiter, "env", new MockEnvironment()
+                .withProperty("ollama.concurrency.adaptive", "true")
+                .withProperty("ollama.concurrency.min", "1")
+                .withProperty("ollama.concurrency.max", "1"));
+        for (int i = 0; i < 5; i++) {
+            assertEquals("fast", hedger.execute(attempt -> answer(attempt, 10, "fast")).getText());
+        }
+
+        // The primary holds the only permit and answers after the hedge was sent; the hedge, still
+        // queued for the permit, must give up rather than take it once the primary is done
+        AtomicInteger calls = new AtomicInteger();
+        AtomicBoolean hedgeGotPermit = new AtomicBoolean();
+        CountDownLatch hedgeFinished = new CountDownLatch(1);
+        LlmResponse response = hedger.execute(attempt -> {
+            boolean primary = calls.incrementAndGet() == 1;
+            try {
+                if (!limiter.acquire(attempt::isCancelled)) {
+                    attempt.done(false);
+                    LlmResponse cancelled = new LlmResponse();
+                    cancelled.setError(true);
+                    cancelled.setText("cancelled");
+                    return cancelled;
+                }
+                if (!primary) {
+                    hedgeGotPermit.set(true);
+                }
+                try {
+                    return answer(attempt, primary ? 300 : 10, primary ? "primary" : "hedge");
+                } finally {
+                    limiter.release(true, 10, 10);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } finally {
+                if (!primary) {
+                    hedgeFinished.countDown();
+                }
+            }
+        });
+        assertEquals("primary", response.getText());
+        assertEquals(2, calls.get());
+        assertTrue(hedgeFinished.await(5, TimeUnit.SECONDS), "the lost hedge should stop waiting");
+        assertFalse(hedgeGotPermit.get(), "the lost hedge should never hold the permit");
+        hedger.destroy();
+    }
+
+    private static LlmResponse answer(RequestHedger.Attempt attempt, long ttftMillis, String text) {
+        attempt.sent("endpoint", new HttpPost("http://localhost/api/generate"));
+        long end = System.currentTimeMillis() + ttftMillis;
+        while (!attempt.isCancelled() && System.currentTimeMillis() < end) {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        LlmResponse response = new LlmResponse();
+        if (!attempt.isCancelled()) {
+            attempt.firstToken();
+            response.setText(text);
+        } else {
+            response.setError(true);
+            response.setText("cancelled");
+        }
+        attempt.done(!attempt.isCancelled());
+        return response;
+    }
+}
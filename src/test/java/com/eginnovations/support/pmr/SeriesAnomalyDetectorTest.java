@@ -0,0 +1,65 @@
+package com.eginnovations.support.pmr;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntToDoubleFunction;
+
+import org.junit.jupiter.api.Test;
+
+import com.eginnovations.support.pmr.model.HistoricalDataRoot;
+
+public class SeriesAnomalyDetectorTest {
+
+    private static SeriesAnomalyDetector.Screen screen(int count, IntToDoubleFunction value) {
+        List<Map<String, String>> points = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            points.add(Map.of("time", String.format("2026-01-01 %02d:%02d", i / 12, i % 12 * 5),
+                    "value", String.valueOf(value.applyAsDouble(i))));
+        }
+        HistoricalDataRoot.HistoricalDataContent content = new HistoricalDataRoot.HistoricalDataContent();
+        content.setData(Map.of("C:", points));
+        SeriesAnomalyDetector.Screen screen = SeriesAnomalyDetector.screen(content);
+        assertNotNull(screen);
+        return screen;
+    }
+
+    @Test
+    public void testFlatAndSeasonalSeriesAreClean() {
+        SeriesAnomalyDetector.Screen flat = screen(96, i -> 0);
+        assertFalse(flat.hasAnomalies(), flat.describe());
+        assertTrue(flat.isConclusive());
+
+        // Two days of a daily cycle with a little noise
+        SeriesAnomalyDetector.Screen seasonal = screen(96, i -> 50 + 20 * Math.sin(2 * Math.PI * i / 48) + (i * 7 % 5) * 0.3);
+        assertFalse(seasonal.hasAnomalies(), seasonal.describe());
+    }
+
+    @Test
+    public void testSpikeIsReportedAsWindow() {
+        SeriesAnomalyDetector.Screen spike = screen(96, i -> i == 40 || i == 41 ? 95 : 20 + i % 3);
+        assertTrue(spike.hasAnomalies());
+        String text = spike.describe();
+        assertTrue(text.contains("1 anomalous window(s) with 2 value(s): C: 2026-01-01 03:20 to 2026-01-01 03:25"), text);
+        assertTrue(text.contains("peak 95 vs median 21"), text);
+    }
+
+    @Test
+    public void testLevelShiftIsReported() {
+        SeriesAnomalyDetector.Screen shift = screen(96, i -> (i < 60 ? 10 : 40) + i % 2);
+        assertTrue(shift.hasAnomalies());
+        assertTrue(shift.describe().contains("Level shift(s): C: at 2026-01-01 05:00: median 10.5 before, 40.5 after"),
+                shift.describe());
+    }
+
+    @Test
+    public void testShortSeriesIsNotConclusive() {
+        SeriesAnomalyDetector.Screen tooShort = screen(5, i -> 1);
+        assertFalse(tooShort.hasAnomalies());
+        assertFalse(tooShort.isConclusive());
+    }
+}
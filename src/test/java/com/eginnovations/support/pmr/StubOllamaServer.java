@@ -0,0 +1,437 @@
+package com.eginnovations.support.pmr;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for an Ollama server, for load and latency tests without a GPU.
+ * <p>
+ * Implements {@code /api/generate} and {@code /api/chat} (streaming and non-streaming) and {@code /api/tags},
+ * and the OpenAI-compatible {@code /v1/chat/completions} of llama.cpp server and vLLM (JSON or server-sent events,
+ * with {@code usage} and llama.cpp's {@code timings}). {@code /api/embed} returns a bag-of-trigrams vector, so
+ * texts that share most of their wording get similar embeddings.
+ * Every request waits a time to first token drawn from a log-normal distribution around
+ * {@link #latencyMillis(long)}, then produces its answer at {@link #tokensPerSecond(double)} (one token per
+ * four characters). A share of requests given by {@link #errorRate(double)} fails with HTTP 500.
+ * Answers are canned: a JSON verdict or verdict array when a {@code format} schema is sent, a STATUS/REASON
+ * text when the prompt asks for one, and a Markdown alarm analysis otherwise. Statuses are drawn with
+ * {@link #statusWeights(double, double, double)}; all random draws come from one seeded generator.
+ * The response statistics mimic Ollama's, including a prompt cache: a repeated chat system message is
+ * not counted in {@code prompt_eval_count} again.
+ */
+public class StubOllamaServer implements AutoCloseable {
+
+    private enum Api { GENERATE, CHAT, OPENAI }
+
+    private static final String[] STATUSES = {"COMPLIANT", "NON-COMPLIANT", "NEEDS REVIEW"};
+    private static final Pattern BATCH_KPI_ID = Pattern.compile("KPI ID: (KPI-\\d+)");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Random random;
+    private final Set<String> cachedSystemPrompts = ConcurrentHashMap.newKeySet();
+
+    private volatile long latencyMillis = 50;
+    private volatile double latencySigma = 0.25;
+    private volatile double tokensPerSecond = 400;
+    private volatile double errorRate;
+    private volatile double[] statusWeights = {0.7, 0.2, 0.1};
+    private volatile String textTemplate = "STATUS: {status}\n\nREASON: The historical data stays within the range given by the interpretation guide.";
+    private volatile String markdownTemplate = "## Alert Interpretation\nThe measure crossed its threshold.\n\n"
+            + "## Root Cause Analysis\nLikely a transient load spike.\n\n"
+            + "## Impact Assessment\nLow.\n\n"
+            + "## Remediation Steps\n1. Review the diagnosis data.\n";
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private StubOllamaServer(long seed) throws IOException {
+        random = new Random(seed);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/api/generate", exchange -> handle(exchange, Api.GENERATE));
+        server.createContext("/api/chat", exchange -> handle(exchange, Api.CHAT));
+        server.createContext("/v1/chat/completions", exchange -> handle(exchange, Api.OPENAI));
+        server.createContext("/api/embed", this::embed);
+        server.createContext("/api/tags", exchange -> send(exchange, 200, "{\"models\":[{\"name\":\"stub\"}]}"));
+        server.start();
+    }
+
+    /**
+     * Starts a stub on a free local port
+     */
+    public static StubOllamaServer start(long seed) throws IOException {
+        return new StubOllamaServer(seed);
+    }
+
+    /**
+     * Generate URL to use as {@code ollama.api.url}
+     */
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/api/generate";
+    }
+
+    /**
+     * Embeddings URL to use as {@code llm.embedding.url}
+     */
+    public String getEmbedUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/api/embed";
+    }
+
+    /**
+     * Chat completions URL to use as {@code llm.openai.api.url}
+     */
+    public String getOpenAiUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/v1/chat/completions";
+    }
+
+    /**
+     * Median time to first token; sigma is the spread of its log-normal distribution (0 for a fixed latency)
+     */
+    public StubOllamaServer latencyMillis(long median, double sigma) {
+        this.latencyMillis = median;
+        this.latencySigma = sigma;
+        return this;
+    }
+
+    public StubOllamaServer latencyMillis(long median) {
+        return latencyMillis(median, latencySigma);
+    }
+
+    public StubOllamaServer tokensPerSecond(double tokensPerSecond) {
+        this.tokensPerSecond = tokensPerSecond;
+        return this;
+    }
+
+    public StubOllamaServer errorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Relative weights of COMPLIANT, NON-COMPLIANT and NEEDS REVIEW answers
+     */
+    public StubOllamaServer statusWeights(double compliant, double nonCompliant, double needsReview) {
+        this.statusWeights = new double[] {compliant, nonCompliant, needsReview};
+        return this;
+    }
+
+    /**
+     * Free-text KPI answer; {status} is replaced by the drawn status
+     */
+    public StubOllamaServer textTemplate(String template) {
+        this.textTemplate = template;
+        return this;
+    }
+
+    /**
+     * Answer to prompts that ask for neither a status nor JSON, i.e. alarm analysis
+     */
+    public StubOllamaServer markdownTemplate(String template) {
+        this.markdownTemplate = template;
+        return this;
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * Highest number of requests that were being served at the same time
+     */
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange, Api api) throws IOException {
+        boolean chat = api != Api.GENERATE;
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try {
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            String system = "";
+            String prompt;
+            if (chat) {
+                StringBuilder user = new StringBuilder();
+                for (JsonNode message : request.path("messages")) {
+                    if ("system".equals(message.path("role").asText())) {
+                        system = message.path("content").asText();
+                    } else {
+                        user.append(message.path("content").asText());
+                    }
+                }
+                prompt = user.toString();
+            } else {
+                prompt = request.path("prompt").asText("");
+            }
+            if (prompt.isEmpty() && system.isEmpty()) {
+                // Warm-up request: load the model only
+                send(exchange, 200, "{\"model\":\"" + request.path("model").asText() + "\",\"done\":true,\"load_duration\":1000000}");
+                return;
+            }
+            requests.incrementAndGet();
+
+            long ttftMillis;
+            boolean fail;
+            String status;
+            synchronized (random) {
+                ttftMillis = Math.round(latencyMillis * Math.exp(latencySigma * random.nextGaussian()));
+                fail = random.nextDouble() < errorRate;
+                status = drawStatus();
+            }
+            sleep(ttftMillis);
+            if (fail) {
+                failures.incrementAndGet();
+                send(exchange, 500, "{\"error\":\"stub failure\"}");
+                return;
+            }
+
+            JsonNode format = api == Api.OPENAI
+                    ? request.path("response_format").path("json_schema").get("schema") : request.get("format");
+            String answer = answer(format, system + prompt, status);
+            long promptTokens = (prompt.length() + (cachedSystemPrompts.add(system) ? system.length() : 0)) / 4;
+            if (api == Api.OPENAI) {
+                completeOpenAi(exchange, request, answer, promptTokens, ttftMillis);
+            } else if (request.path("stream").asBoolean(true)) {
+                stream(exchange, chat, answer, promptTokens, ttftMillis);
+            } else {
+                List<String> tokens = tokenize(answer);
+                sleep(Math.round(tokens.size() * 1000 / tokensPerSecond));
+                ObjectNode response = objectMapper.createObjectNode();
+                putText(response, chat, answer);
+                putStats(response, promptTokens, ttftMillis, tokens.size());
+                send(exchange, 200, objectMapper.writeValueAsString(response));
+            }
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private void stream(HttpExchange exchange, boolean chat, String answer, long promptTokens, long ttftMillis)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        List<String> tokens = tokenize(answer);
+        long nanosPerToken = Math.round(1_000_000_000L / tokensPerSecond);
+        long next = System.nanoTime();
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (String token : tokens) {
+                next += nanosPerToken;
+                sleep((next - System.nanoTime()) / 1_000_000);
+                ObjectNode chunk = objectMapper.createObjectNode();
+                putText(chunk, chat, token);
+                chunk.put("done", false);
+                out.write((objectMapper.writeValueAsString(chunk) + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+            ObjectNode last = objectMapper.createObjectNode();
+            putText(last, chat, "");
+            putStats(last, promptTokens, ttftMillis, tokens.size());
+            out.write((objectMapper.writeValueAsString(last) + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // The client stopped reading, as OllamaService does once its stop condition holds
+        }
+    }
+
+    /**
+     * Answers a chat completions request as one JSON body or, with stream=true, as server-sent events
+     */
+    private void completeOpenAi(HttpExchange exchange, JsonNode request, String answer, long promptTokens, long ttftMillis)
+            throws IOException {
+        List<String> tokens = tokenize(answer);
+        long evalMillis = Math.round(tokens.size() * 1000 / tokensPerSecond);
+        ObjectNode usage = objectMapper.createObjectNode().put("prompt_tokens", promptTokens)
+                .put("completion_tokens", tokens.size()).put("total_tokens", promptTokens + tokens.size());
+        ObjectNode timings = objectMapper.createObjectNode().put("prompt_n", promptTokens).put("prompt_ms", ttftMillis)
+                .put("predicted_n", tokens.size()).put("predicted_ms", evalMillis);
+        if (!request.path("stream").asBoolean(false)) {
+            sleep(evalMillis);
+            ObjectNode response = objectMapper.createObjectNode();
+            response.put("object", "chat.completion");
+            ObjectNode choice = response.putArray("choices").addObject();
+            choice.put("index", 0);
+            choice.putObject("message").put("role", "assistant").put("content", answer);
+            choice.put("finish_reason", "stop");
+            response.set("usage", usage);
+            response.set("timings", timings);
+            send(exchange, 200, objectMapper.writeValueAsString(response));
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        long nanosPerToken = Math.round(1_000_000_000L / tokensPerSecond);
+        long next = System.nanoTime();
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (String token : tokens) {
+                next += nanosPerToken;
+                sleep((next - System.nanoTime()) / 1_000_000);
+                ObjectNode chunk = objectMapper.createObjectNode();
+                chunk.put("object", "chat.completion.chunk");
+                chunk.putArray("choices").addObject().put("index", 0).putNull("finish_reason")
+                        .putObject("delta").put("content", token);
+                writeEvent(out, objectMapper.writeValueAsString(chunk));
+            }
+            ObjectNode last = objectMapper.createObjectNode();
+            last.put("object", "chat.completion.chunk");
+            last.putArray("choices").addObject().put("index", 0).put("finish_reason", "stop").putObject("delta");
+            last.set("timings", timings);
+            writeEvent(out, objectMapper.writeValueAsString(last));
+            if (request.path("stream_options").path("include_usage").asBoolean(false)) {
+                ObjectNode usageChunk = objectMapper.createObjectNode();
+                usageChunk.put("object", "chat.completion.chunk");
+                usageChunk.putArray("choices");
+                usageChunk.set("usage", usage);
+                writeEvent(out, objectMapper.writeValueAsString(usageChunk));
+            }
+            writeEvent(out, "[DONE]");
+        } catch (IOException e) {
+            // The client stopped reading once its stop condition held
+        }
+    }
+
+    private void embed(HttpExchange exchange) throws IOException {
+        try {
+            String input = objectMapper.readTree(exchange.getRequestBody()).path("input").asText("");
+            double[] vector = new double[256];
+            for (int i = 0; i + 3 <= input.length(); i++) {
+                vector[Math.floorMod(input.substring(i, i + 3).hashCode(), vector.length)]++;
+            }
+            ObjectNode response = objectMapper.createObjectNode();
+            ArrayNode embedding = response.putArray("embeddings").addArray();
+            for (double value : vector) {
+                embedding.add(value);
+            }
+            send(exchange, 200, objectMapper.writeValueAsString(response));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void writeEvent(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private String answer(JsonNode format, String prompt, String status) throws IOException {
+        if (format != null && "array".equals(format.path("type").asText())) {
+            ArrayNode verdicts = objectMapper.createArrayNode();
+            Matcher matcher = BATCH_KPI_ID.matcher(prompt);
+            while (matcher.find()) {
+                verdicts.addObject().put("kpiId", matcher.group(1)).put("status", status).put("confidence", 0.9)
+                        .put("reason", "Values stay within the expected range.");
+            }
+            return objectMapper.writeValueAsString(verdicts);
+        }
+        if (format != null) {
+            ObjectNode verdict = objectMapper.createObjectNode();
+            verdict.put("status", status);
+            verdict.put("confidence", 0.9);
+            verdict.putArray("reasons").add("Values stay within the expected range.");
+            verdict.putArray("keyDataPoints").add("Latest value: 0");
+            verdict.put("explanation", "The KPI behaves as described by the interpretation guide.");
+            return objectMapper.writeValueAsString(verdict);
+        }
+        if (prompt.contains("STATUS:")) {
+            return textTemplate.replace("{status}", status);
+        }
+        return markdownTemplate;
+    }
+
+    private String drawStatus() {
+        double[] weights = statusWeights;
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        double draw = random.nextDouble() * total;
+        for (int i = 0; i < weights.length; i++) {
+            draw -= weights[i];
+            if (draw < 0) {
+                return STATUSES[i];
+            }
+        }
+        return STATUSES[0];
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < text.length(); i += 4) {
+            tokens.add(text.substring(i, Math.min(text.length(), i + 4)));
+        }
+        return tokens;
+    }
+
+    private static void putText(ObjectNode json, boolean chat, String text) {
+        if (chat) {
+            json.putObject("message").put("role", "assistant").put("content", text);
+        } else {
+            json.put("response", text);
+        }
+    }
+
+    private void putStats(ObjectNode json, long promptTokens, long ttftMillis, long evalCount) {
+        long evalNanos = Math.round(evalCount * 1_000_000_000L / tokensPerSecond);
+        json.put("done", true);
+        json.put("done_reason", "stop");
+        json.put("load_duration", 1_000_000L);
+        json.put("prompt_eval_count", promptTokens);
+        json.put("prompt_eval_duration", ttftMillis * 1_000_000L);
+        json.put("eval_count", evalCount);
+        json.put("eval_duration", evalNanos);
+        json.put("total_duration", ttftMillis * 1_000_000L + evalNanos);
+    }
+
+    private void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.eginnovations.support.pmr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.eginnovations.support.pmr.model.HistoricalDataRoot;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ThresholdEvaluatorTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private HistoricalDataRoot.HistoricalDataContent content(String data, String diagnosis) throws Exception {
+        HistoricalDataRoot.HistoricalDataContent content = new HistoricalDataRoot.HistoricalDataContent();
+        content.setData(objectMapper.readValue(data, Map.class));
+        content.setDiagnosisData(objectMapper.readValue(diagnosis, Object.class));
+        return content;
+    }
+
+    @Test
+    public void testValuesWithinThresholdsPassCleanly() throws Exception {
+        ThresholdEvaluator.Evaluation evaluation = ThresholdEvaluator.evaluate(content(
+                "{\"C:\":[{\"time\":\"2026-01-01 10:00\",\"value\":\"40\"},{\"time\":\"2026-01-01 10:05\",\"value\":\"55.5\"}]}",
+                "{\"thresholdData\":{\"maxThreshold\":\"Critical:90/Major:80\",\"minThreshold\":\"NA\",\"maxSamples\":\"3\"}}"));
+        assertNotNull(evaluation);
+        assertTrue(evaluation.isCleanPass());
+        assertTrue(evaluation.describe().startsWith("Thresholds: upper Critical 90 / Major 80, lower none."));
+    }
+
+    @Test
+    public void testBreachesArePerDescriptor() throws Exception {
+        ThresholdEvaluator.Evaluation evaluation = ThresholdEvaluator.evaluate(content(
+                "{\"C:\":[{\"time\":\"2026-01-01 10:00\",\"value\":\"85\"},{\"time\":\"2026-01-01 10:05\",\"value\":\"95\"},"
+                        + "{\"time\":\"2026-01-01 10:10\",\"value\":\"10\"}],"
+                        + "\"D:\":[{\"time\":\"2026-01-01 10:00\",\"value\":\"85\"}]}",
+                "{\"C:\":{\"thresholdData\":{\"upper\":{\"Critical\":90,\"Major\":80}}},"
+                        + "\"D:\":{\"thresholdData\":{\"upper\":95}}}"));
+        assertNotNull(evaluation);
+        assertFalse(evaluation.isCleanPass());
+        assertEquals(2, evaluation.getBreaches());
+        String text = evaluation.describe();
+        assertTrue(text.contains("2 breach(es) (50.0%) in 1 series, about 10 min in total, longest run 2"), text);
+        assertTrue(text.contains("worst 95 at 2026-01-01T10:05 in C: (Critical threshold 90)"), text);
+    }
+
+    @Test
+    public void testSeriesWithoutThresholdsOrNumbersAreNotClean() throws Exception {
+        ThresholdEvaluator.Evaluation evaluation = ThresholdEvaluator.evaluate(content(
+                "{\"C:\":[{\"time\":\"t1\",\"value\":\"-\"}],\"D:\":[{\"time\":\"t1\",\"value\":\"1\"}]}",
+                "{\"C:\":{\"thresholdData\":{\"max\":\"50\"}}}"));
+        assertNotNull(evaluation);
+        assertFalse(evaluation.isCleanPass());
+        assertTrue(evaluation.describe().endsWith("1 value(s) are not numeric. No thresholds for: D:."));
+
+        assertNull(ThresholdEvaluator.evaluate(content("{\"C:\":[{\"value\":\"1\"}]}",
+                "{\"thresholdData\":{\"maxThreshold\":\"NA\"}}")));
+    }
+}